@@ -80,8 +80,9 @@ public class App {
      * the collection file name. If it's absent, an error response is returned.</p>
      */
     public static Request init() {
-        commandControl = new CommandControl();
-        modeControl = new ModeControl(commandControl);
+        CommandControl commands = new CommandControl();
+        commandControl = commands;
+        modeControl = new ModeControl(commandControl, commands.getCollectionControl().getDataBaseControl());
 
         // переменная: collection_file
         Request request;
@@ -9,9 +9,11 @@ import connections.Response;
 import connections.ResponseType;
 import connections.ServerRequest;
 import connections.ServerResponse;
+import controls.AuthControl;
 import controls.CollectionControl;
 import controls.CommandControl;
 import util.StringWrapper;
+import util.TokenWrapper;
 import util.UserWrapper;
 
 
@@ -97,6 +99,25 @@ public class LogIn implements ICommand{
     }
 
 
+    /**
+     * Builds the response to a successful login. If the client called {@code log_in token},
+     * the response carries a session token that the client can send instead of the password.
+     *
+     * @param req     The login request.
+     * @param user    The credentials of the user.
+     * @param message The message for the user.
+     * @return The {@link ServerResponse} with a {@link StringWrapper} or a {@link TokenWrapper}.
+     */
+    private ServerResponse success(ServerRequest req, UserWrapper user, String message) {
+        String[] parts = req.getContent().split("\\s+");
+        if (parts.length >= 2 && parts[1].equals("token")) {
+            long expiresAt = System.currentTimeMillis() + AuthControl.getTtlMillis();
+            TokenWrapper token = new TokenWrapper(AuthControl.issueToken(user.getName(), expiresAt), expiresAt, message);
+            return new ServerResponse(req.getClientCommandId(), ResponseType.SUCCESS, PrintType.LINE, token, req.getClientId());
+        }
+        return new ServerResponse(req.getClientCommandId(), ResponseType.SUCCESS, PrintType.LINE, new StringWrapper(message), req.getClientId());
+    }
+
     /**
      * Executes the command by returning a response indicating program termination.
      *
@@ -110,9 +131,9 @@ public class LogIn implements ICommand{
             UserWrapper user = (UserWrapper) req.getContentExt();
             try {
                 if (this.collectionControl.getDataBaseControl().authenticateUser(user.getName(), user.getPassword())) {
-                    return new ServerResponse(req.getClientCommandId(), ResponseType.SUCCESS, PrintType.LINE, new StringWrapper("Успешный вход в систему"), req.getClientId());
+                    return success(req, user, "Успешный вход в систему");
                 } else if (this.collectionControl.getDataBaseControl().registerUser(user.getName(), user.getPassword())){
-                    return new ServerResponse(req.getClientCommandId(), ResponseType.SUCCESS, PrintType.LINE, new StringWrapper("Регистрация нового пользователя прошла успешно"), req.getClientId());
+                    return success(req, user, "Регистрация нового пользователя прошла успешно");
                 }
                 else {
                     return new ServerResponse(req.getClientCommandId(), ResponseType.VALIDATION_FAILURE, PrintType.ERROR, new StringWrapper("Неверное имя пользователя или пароль"), req.getClientId());
@@ -0,0 +1,214 @@
+package commands;
+
+import java.io.Externalizable;
+
+import connections.PrintType;
+import connections.Request;
+import connections.RequestType;
+import connections.Response;
+import connections.ResponseType;
+import connections.ServerRequest;
+import connections.ServerResponse;
+import controls.CollectionControl;
+import controls.CommandControl;
+import util.ArgumentTypeConverter;
+import util.FlatPageWrapper;
+import util.StringWrapper;
+
+/**
+ * The ShowPage class implements the {@link ICommand} interface and provides functionality
+ * to browse the collection page by page in a chosen order, so that a client never has to
+ * receive the whole collection in one response.
+ */
+public class ShowPage implements ICommand{
+
+    /**
+     * The page size used when the size is not specified.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * The maximum number of flats in one page.
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * The unique identifier of the command.
+     */
+    private int id;
+
+    /**
+     * The {@link CommandControl} instance for managing command-related operations.
+     */
+    private CommandControl commandControl;
+
+    /**
+     * The {@link CollectionControl} instance for managing the collection of flats.
+     */
+    private CollectionControl collectionControl;
+
+    /**
+     * The last {@link Response} generated during the command execution.
+     */
+    private Response lastResponse;
+
+
+    /**
+     * Constructs a new ShowPage command.
+     *
+     * @param id               The unique identifier for this command.
+     * @param arguments        The initial arguments provided to the command. Can specify a sort key (optional).
+     * @param commandControl   The {@link CommandControl} instance for managing commands.
+     * @param collectionControl The {@link CollectionControl} instance for managing the collection.
+     */
+    public ShowPage(int id, String arguments, CommandControl commandControl, CollectionControl collectionControl) {
+        super();
+        
+        this.id = id;
+        this.commandControl = commandControl;
+        this.collectionControl = collectionControl;
+        proceedRequest(new Request(id, RequestType.EXECUTE_COMMAND, arguments));
+    }
+
+
+    /**
+     * Returns the unique identifier of the command.
+     *
+     * @return The command ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the {@link CommandControl} instance associated with this command.
+     *
+     * @return The {@link CommandControl} instance.
+     */
+    public CommandControl getCommandControl() {
+        return commandControl;
+    }
+
+    /**
+     * Returns the {@link CollectionControl} instance associated with this command.
+     *
+     * @return The {@link CollectionControl} instance.
+     */
+    public CollectionControl getCollectionControl() {
+        return collectionControl;
+    }
+
+    /**
+     * Returns the last {@link Response} generated by this command.
+     *
+     * @return The last {@link Response}.
+     */
+    public Response getLastResponse() {
+        return lastResponse;
+    }
+
+
+    /**
+     * Executes the command to return one page of the collection.
+     * <p>
+     * The command is called as {@code show_page [sort] [size] [cursor]}. The sort key defaults to id,
+     * the page size defaults to {@link #DEFAULT_PAGE_SIZE}, and the cursor is the one returned with
+     * the previous page; without a cursor the first page is returned.
+     *
+     * @param request The {@link Request} object containing the command details.
+     * @return A {@link Response} representing the result of the command execution.
+     */
+    private Response executeCommand(Request request) {
+        String[] parts = request.getContent() == null ? new String[0] : request.getContent().trim().split("\\s+");
+        int offset = request instanceof ServerRequest ? 1 : 0; // В запросе клиента первое слово — имя команды
+        String sort = parts.length > offset ? parts[offset] : "id";
+        int size = DEFAULT_PAGE_SIZE;
+        String cursor = parts.length > offset + 2 ? parts[offset + 2] : null;
+        ResponseType type = ResponseType.SUCCESS;
+        PrintType printType = PrintType.LINE;
+        Object content;
+
+        try {
+            if (parts.length > offset + 1) size = ArgumentTypeConverter.getInteger(parts[offset + 1]);
+            if (size <= 0 || size > MAX_PAGE_SIZE) throw new IllegalArgumentException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+            content = collectionControl.getPage(sort, size, cursor);
+        }
+        catch (NumberFormatException e) {
+            type = ResponseType.INVALID_ARGUMENT;
+            printType = PrintType.ERROR;
+            content = "Неверный формат размера страницы";
+        }
+        catch (IllegalArgumentException e) {
+            type = ResponseType.INVALID_ARGUMENT;
+            printType = PrintType.ERROR;
+            content = e.getMessage();
+        }
+
+        if (request instanceof ServerRequest) {
+            ServerRequest req = (ServerRequest) request;
+            Externalizable wrapped = content instanceof FlatPageWrapper ? (FlatPageWrapper) content : new StringWrapper((String) content);
+            return new ServerResponse(req.getClientCommandId(), type, printType, wrapped, req.getClientId());
+        }
+        return new Response(getId(), type, printType, content.toString());
+    }
+
+    /**
+     * Processes the provided request and delegates it to the appropriate command handler.
+     *
+     * @param request The {@link Request} to be processed.
+     * @return A {@link Response} representing the outcome of the request processing.
+     */
+    @Override
+    public Response proceedRequest(Request request) {
+        if (request.getType() == RequestType.EXECUTE_COMMAND) {
+            lastResponse = executeCommand(request);
+            return lastResponse;
+        }
+
+        return new Response(getId(), ResponseType.SUCCESS, PrintType.WARNING, "Not correct request type");
+    }
+
+
+    /**
+     * The Factory class provides methods to create instances of the ShowPage command
+     * and describe its functionality.
+     */
+    public static class Factory implements ICommandFactory {
+
+        /**
+         * Creates a new instance of the ShowPage command.
+         *
+         * @param id               The unique identifier for the command.
+         * @param arguments        The initial arguments for the command. Can specify a sort key (optional).
+         * @param commandControl   The {@link CommandControl} instance for managing commands.
+         * @param collectionControl The {@link CollectionControl} instance for managing the collection.
+         * @return A new instance of the ShowPage command.
+         */
+        @Override
+        public ICommand create(int id, String arguments, CommandControl commandControl, CollectionControl collectionControl, Request request) {
+            return new ShowPage(id, arguments, commandControl, collectionControl);
+        }
+
+        /**
+         * Returns a brief description of the ShowPage command.
+         *
+         * @return A short description of the command functionality.
+         */
+        @Override
+        public String getDescription() {
+            return "show_page [sort] [size] [cursor]: вывести страницу коллекции";
+        }
+
+        /**
+         * Returns an extended description of the ShowPage command, explaining its behavior in detail.
+         *
+         * @return A detailed description of the command functionality.
+         */
+        @Override
+        public String getExtendedDescription() {
+            return "show_page: вывести первые " + DEFAULT_PAGE_SIZE + " квартир, упорядоченных по id.\n"
+                    + "show_page sort size: вывести первые size квартир, упорядоченных по ключу sort (" + String.join(", ", CollectionControl.getPageOrders()) + ").\n"
+                    + "show_page sort size cursor: вывести следующую страницу; cursor возвращается вместе с предыдущей страницей.";
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package commands;
+
+import connections.PrintType;
+import connections.Request;
+import connections.RequestType;
+import connections.Response;
+import connections.ResponseType;
+import connections.ServerRequest;
+import connections.ServerResponse;
+import controls.CollectionControl;
+import controls.CommandControl;
+import controls.StatsControl;
+import util.StringWrapper;
+
+/**
+ * The Stats class implements the {@link ICommand} interface and provides functionality
+ * to display the runtime counters of the server registered in {@link StatsControl}.
+ */
+public class Stats implements ICommand{
+
+    /**
+     * The unique identifier of the command.
+     */
+    private int id;
+
+    /**
+     * The {@link CommandControl} instance for managing command-related operations.
+     */
+    private CommandControl commandControl;
+
+    /**
+     * The {@link CollectionControl} instance for managing the collection (unused in this command).
+     */
+    private CollectionControl collectionControl;
+
+    /**
+     * The last {@link Response} generated during the command execution.
+     */
+    private Response lastResponse;
+
+
+    /**
+     * Constructs a new Stats command.
+     *
+     * @param id               The unique identifier for this command.
+     * @param arguments        The initial arguments provided to the command (unused).
+     * @param commandControl   The {@link CommandControl} instance for managing commands.
+     * @param collectionControl The {@link CollectionControl} instance for managing the collection.
+     */
+    public Stats(int id, String arguments, CommandControl commandControl, CollectionControl collectionControl) {
+        super();
+        
+        this.id = id;
+        this.commandControl = commandControl;
+        this.collectionControl = collectionControl;
+        proceedRequest(new Request(id, RequestType.EXECUTE_COMMAND, arguments));
+    }
+
+
+    /**
+     * Returns the unique identifier of the command.
+     *
+     * @return The command ID.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the {@link CommandControl} instance associated with this command.
+     *
+     * @return The {@link CommandControl} instance.
+     */
+    public CommandControl getCommandControl() {
+        return commandControl;
+    }
+
+    /**
+     * Returns the {@link CollectionControl} instance associated with this command.
+     *
+     * @return The {@link CollectionControl} instance.
+     */
+    public CollectionControl getCollectionControl() {
+        return collectionControl;
+    }
+
+    /**
+     * Returns the last {@link Response} generated by this command.
+     *
+     * @return The last {@link Response}.
+     */
+    public Response getLastResponse() {
+        return lastResponse;
+    }
+
+
+    /**
+     * Executes the command by rendering all registered server counters.
+     *
+     * @param request The {@link Request} object containing the command details.
+     * @return A {@link Response} containing the counters.
+     */
+    private Response executeCommand(Request request) {
+        if (request instanceof ServerRequest) {
+            ServerRequest req = (ServerRequest) request;
+            
+            return new ServerResponse(req.getClientCommandId(), ResponseType.SUCCESS, PrintType.LINE, new StringWrapper(StatsControl.render()), req.getClientId());
+        }
+
+        return new Response(getId(), ResponseType.SUCCESS, PrintType.LINE, StatsControl.render());
+    }
+
+    /**
+     * Processes the provided request and delegates it to the appropriate command handler.
+     *
+     * @param request The {@link Request} to be processed.
+     * @return A {@link Response} representing the outcome of the request processing.
+     */
+    @Override
+    public Response proceedRequest(Request request) {
+        if (request.getType() == RequestType.EXECUTE_COMMAND) {
+            lastResponse = executeCommand(request);
+            return lastResponse;
+        }
+
+        return new Response(getId(), ResponseType.SUCCESS, PrintType.WARNING, "Not correct request type");
+    }
+
+
+    /**
+     * The Factory class provides methods to create instances of the Stats command
+     * and describe its functionality.
+     */
+    public static class Factory implements ICommandFactory {
+
+        /**
+         * Creates a new instance of the Stats command.
+         *
+         * @param id               The unique identifier for the command.
+         * @param arguments        The initial arguments provided to the command (unused).
+         * @param commandControl   The {@link CommandControl} instance for managing commands.
+         * @param collectionControl The {@link CollectionControl} instance for managing the collection.
+         * @return A new instance of the Stats command.
+         */
+        @Override
+        public ICommand create(int id, String arguments, CommandControl commandControl, CollectionControl collectionControl, Request request) {
+            return new Stats(id, arguments, commandControl, collectionControl);
+        }
+
+        /**
+         * Returns a brief description of the Stats command.
+         *
+         * @return A short description of the command functionality.
+         */
+        @Override
+        public String getDescription() {
+            return "stats: вывести счётчики работы сервера";
+        }
+
+        /**
+         * Returns an extended description of the Stats command.
+         *
+         * @return A detailed description of the command functionality.
+         */
+        @Override
+        public String getExtendedDescription() {
+            return "stats: вывести счётчики работы сервера (пулы буферов, очереди, сжатие и т.д.).";
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package connections;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Фрагмент сообщения, которое не помещается в одну датаграмму.
+ * <p>
+ * Каждый фрагмент начинается с заголовка: магическое число, id сообщения,
+ * номер фрагмента и общее число фрагментов. Сообщения, помещающиеся в одну
+ * датаграмму, отправляются без заголовка.
+ */
+public class Fragment {
+    /**
+     * Магическое число заголовка фрагмента ("FRAG").
+     */
+    public static final int MAGIC = 0x46524147;
+
+    /**
+     * Размер заголовка фрагмента в байтах.
+     */
+    public static final int HEADER_SIZE = 16;
+
+    /**
+     * Максимальный размер датаграммы: MTU Ethernet (1500) без заголовков IP и UDP.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1472;
+
+    /**
+     * Максимальный размер полезной нагрузки одного фрагмента.
+     */
+    public static final int MAX_PAYLOAD_SIZE = MAX_DATAGRAM_SIZE - HEADER_SIZE;
+
+    /**
+     * Максимальное число фрагментов в одном сообщении (около 12 МБ).
+     */
+    public static final int MAX_FRAGMENTS = 8192;
+
+    private final int messageId;
+    private final int index;
+    private final int count;
+    private final ByteBuffer payload;
+
+    private Fragment(int messageId, int index, int count, ByteBuffer payload) {
+        this.messageId = messageId;
+        this.index = index;
+        this.count = count;
+        this.payload = payload;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    /**
+     * Возвращает число фрагментов, необходимое для передачи сообщения.
+     *
+     * @param length Длина сообщения в байтах.
+     * @return Число фрагментов.
+     */
+    public static int countFor(int length) {
+        return countFor(length, MAX_PAYLOAD_SIZE);
+    }
+
+    /**
+     * Возвращает число фрагментов, необходимое для передачи сообщения, если часть датаграммы
+     * занята другими заголовками.
+     *
+     * @param length      Длина сообщения в байтах.
+     * @param payloadSize Полезная нагрузка одного фрагмента.
+     * @return Число фрагментов.
+     */
+    public static int countFor(int length, int payloadSize) {
+        return Math.max(1, (length + payloadSize - 1) / payloadSize);
+    }
+
+    /**
+     * Записывает заголовок фрагмента в буфер.
+     *
+     * @param buffer    Буфер датаграммы.
+     * @param messageId Id сообщения.
+     * @param index     Номер фрагмента.
+     * @param count     Общее число фрагментов.
+     */
+    public static void writeHeader(ByteBuffer buffer, int messageId, int index, int count) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(messageId);
+        buffer.putInt(index);
+        buffer.putInt(count);
+    }
+
+    /**
+     * Проверяет, начинается ли датаграмма с заголовка фрагмента. Позиция буфера не меняется.
+     *
+     * @param buffer Буфер с принятой датаграммой.
+     * @return true, если датаграмма является фрагментом.
+     */
+    public static boolean isFragment(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getInt(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Читает фрагмент из буфера. Полезная нагрузка ссылается на тот же буфер.
+     *
+     * @param buffer Буфер с принятой датаграммой.
+     * @return Фрагмент, или null, если заголовок некорректен.
+     */
+    public static Fragment read(ByteBuffer buffer) {
+        if (!isFragment(buffer)) return null;
+        buffer.getInt();
+        int messageId = buffer.getInt();
+        int index = buffer.getInt();
+        int count = buffer.getInt();
+        if (count <= 0 || count > MAX_FRAGMENTS || index < 0 || index >= count) return null;
+        if (buffer.remaining() > MAX_PAYLOAD_SIZE) return null;
+        return new Fragment(messageId, index, count, buffer.slice());
+    }
+}
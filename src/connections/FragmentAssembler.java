@@ -0,0 +1,119 @@
+package connections;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Собирает сообщения из фрагментов {@link Fragment}, пришедших в произвольном порядке.
+ * Незавершённые сообщения хранятся ограниченное время и в ограниченном количестве.
+ */
+public class FragmentAssembler {
+    private static class Key {
+        private final SocketAddress sender;
+        private final int messageId;
+
+        Key(SocketAddress sender, int messageId) {
+            this.sender = sender;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return messageId == other.messageId && sender.equals(other.sender);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sender, messageId);
+        }
+    }
+
+    private static class Partial {
+        private final byte[][] parts;
+        private final long createdAt = System.currentTimeMillis();
+        private int received;
+        private int length;
+
+        Partial(int count) {
+            parts = new byte[count][];
+        }
+    }
+
+    private final Map<Key, Partial> partials = new ConcurrentHashMap<>();
+    private final int maxPartials;
+    private final long timeoutMillis;
+
+    /**
+     * @param maxPartials   Максимальное число одновременно собираемых сообщений.
+     * @param timeoutMillis Время, через которое незавершённое сообщение отбрасывается.
+     */
+    public FragmentAssembler(int maxPartials, long timeoutMillis) {
+        this.maxPartials = maxPartials;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Принимает очередной фрагмент.
+     *
+     * @param sender   Адрес отправителя.
+     * @param fragment Принятый фрагмент.
+     * @return Собранное сообщение, если пришёл последний недостающий фрагмент, иначе null.
+     */
+    public byte[] accept(SocketAddress sender, Fragment fragment) {
+        if (fragment.getCount() == 1) return toArray(fragment);
+
+        Key key = new Key(sender, fragment.getMessageId());
+        Partial partial = partials.get(key);
+        if (partial == null) {
+            if (partials.size() >= maxPartials) evictStale();
+            if (partials.size() >= maxPartials) return null;
+            partial = partials.computeIfAbsent(key, k -> new Partial(fragment.getCount()));
+        }
+
+        synchronized (partial) {
+            if (partial.parts.length != fragment.getCount()) return null;
+            if (partial.parts[fragment.getIndex()] != null) return null;
+            partial.parts[fragment.getIndex()] = toArray(fragment);
+            partial.length += partial.parts[fragment.getIndex()].length;
+            partial.received++;
+            if (partial.received < partial.parts.length) return null;
+
+            partials.remove(key);
+            byte[] message = new byte[partial.length];
+            int offset = 0;
+            for (byte[] part : partial.parts) {
+                System.arraycopy(part, 0, message, offset, part.length);
+                offset += part.length;
+            }
+            return message;
+        }
+    }
+
+    /**
+     * Отбрасывает незавершённые сообщения, собираемые дольше допустимого времени.
+     */
+    public void evictStale() {
+        long deadline = System.currentTimeMillis() - timeoutMillis;
+        partials.values().removeIf(p -> p.createdAt < deadline);
+    }
+
+    /**
+     * Возвращает число сообщений, собираемых в данный момент.
+     *
+     * @return Число незавершённых сообщений.
+     */
+    public int getPendingCount() {
+        return partials.size();
+    }
+
+    private static byte[] toArray(Fragment fragment) {
+        byte[] data = new byte[fragment.getPayload().remaining()];
+        fragment.getPayload().duplicate().get(data);
+        return data;
+    }
+}
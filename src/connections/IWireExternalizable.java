@@ -0,0 +1,25 @@
+package connections;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The IWireExternalizable interface is implemented by the types that can be written
+ * with the compact binary codec {@link WireCodec}. Implementations write their fields
+ * in a fixed order, so the field order is the schema of the type.
+ */
+public interface IWireExternalizable {
+
+    /**
+     * Writes the fields of the object into the buffer.
+     *
+     * @param out The buffer to write into.
+     */
+    void writeWire(ByteBuffer out);
+
+    /**
+     * Reads the fields of the object from the buffer in the order they were written.
+     *
+     * @param in The buffer to read from.
+     */
+    void readWire(ByteBuffer in);
+}
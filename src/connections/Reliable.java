@@ -0,0 +1,62 @@
+package connections;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Заголовки режима надёжной доставки.
+ * <p>
+ * В этом режиме каждая датаграмма сервера (целое сообщение или фрагмент {@link Fragment})
+ * начинается с заголовка: магическое число и порядковый номер датаграммы в сессии.
+ * Клиент подтверждает получение датаграммой подтверждения: магическое число, номер,
+ * до которого включительно получены все датаграммы (кумулятивное подтверждение), и битовая
+ * маска выборочного подтверждения, где бит i означает получение датаграммы с номером
+ * cumulative + 1 + i. Нумерация начинается с нуля; датаграмма с номером 0 означает,
+ * что сервер начал новый поток и клиент должен сбросить своё состояние приёма.
+ */
+public class Reliable {
+    /**
+     * Магическое число заголовка датаграммы ("RLBL").
+     */
+    public static final int MAGIC = 0x524C424C;
+
+    /**
+     * Магическое число датаграммы подтверждения ("RACK").
+     */
+    public static final int ACK_MAGIC = 0x5241434B;
+
+    /**
+     * Размер заголовка датаграммы в байтах.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Размер датаграммы подтверждения в байтах.
+     */
+    public static final int ACK_SIZE = 16;
+
+    /**
+     * Число датаграмм, охватываемых маской выборочного подтверждения.
+     */
+    public static final int SACK_BITS = 64;
+
+    /**
+     * Записывает заголовок датаграммы в буфер.
+     *
+     * @param buffer   Буфер датаграммы.
+     * @param sequence Порядковый номер датаграммы.
+     */
+    public static void writeHeader(ByteBuffer buffer, int sequence) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(sequence);
+    }
+
+    /**
+     * Проверяет, является ли датаграмма подтверждением. Позиция буфера не меняется.
+     *
+     * @param buffer Буфер с принятой датаграммой.
+     * @return true, если датаграмма является подтверждением.
+     */
+    public static boolean isAck(ByteBuffer buffer) {
+        return buffer.remaining() == ACK_SIZE && buffer.getInt(buffer.position()) == ACK_MAGIC;
+    }
+}
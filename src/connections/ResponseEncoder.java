@@ -0,0 +1,196 @@
+package connections;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Переиспользуемый сериализатор {@link ServerResponse}.
+ * <p>
+ * Поток {@link ObjectOutputStream} создаётся один раз. Перед каждым ответом таблица ссылок
+ * сбрасывается, а выходной буфер обрезается до заголовка потока, так что каждый результат
+ * совпадает с выводом нового {@link ObjectOutputStream}.
+ * <p>
+ * Для клиентов, использующих {@link WireCodec}, ответ записывается бинарным кодеком
+ * в переиспользуемый {@link ByteBuffer}, который увеличивается при нехватке места.
+ * Если клиент согласился принимать сжатые ответы, тело ответа больше порога сжимается
+ * собственным {@link Deflater} кодировщика, который переиспользуется между ответами.
+ */
+public class ResponseEncoder {
+    /**
+     * Размер буфера, больше которого кодировщик не возвращается в пул.
+     */
+    public static final int MAX_RETAINED_SIZE = 1 << 20;
+
+    private static class Output extends ByteArrayOutputStream {
+        Output(int size) {
+            super(size);
+        }
+
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        void truncate(int length) {
+            count = length;
+        }
+    }
+
+    private static final LongAdder compressedCount = new LongAdder();
+    private static final LongAdder compressedBytesIn = new LongAdder();
+    private static final LongAdder compressedBytesOut = new LongAdder();
+    private static final LongAdder compressionNanos = new LongAdder();
+
+    private final Output output = new Output(8192);
+    private final ObjectOutputStream stream;
+    private final int headerSize;
+    private ByteBuffer wire = ByteBuffer.allocate(8192);
+    private ByteBuffer packed = ByteBuffer.allocate(8192); // Сжатый ответ
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private ByteBuffer result; // Буфер с последним закодированным бинарным ответом
+    private boolean binary; // Формат последнего закодированного ответа
+
+    public ResponseEncoder() {
+        try {
+            stream = new ObjectOutputStream(output);
+            stream.flush();
+            headerSize = output.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Сериализует ответ во внутренний буфер.
+     *
+     * @param response Ответ для сериализации.
+     * @throws IOException Если ответ не удалось сериализовать.
+     */
+    public void encode(ServerResponse response) throws IOException {
+        binary = false;
+        stream.reset();
+        stream.flush();
+        output.truncate(headerSize);
+        response.writeExternal(stream);
+        stream.flush();
+    }
+
+    /**
+     * Записывает ответ бинарным кодеком {@link WireCodec} во внутренний буфер.
+     *
+     * @param response Ответ для кодирования.
+     * @param flags    Флаги заголовка сообщения.
+     */
+    public void encodeBinary(ServerResponse response, byte flags) {
+        encodeBinary(response, flags, 0);
+    }
+
+    /**
+     * Записывает ответ бинарным кодеком и сжимает его тело, если оно длиннее порога
+     * и сжатие действительно уменьшает размер.
+     *
+     * @param response           Ответ для кодирования.
+     * @param flags              Флаги заголовка сообщения.
+     * @param compressThreshold  Минимальный размер тела для сжатия; 0 отключает сжатие.
+     */
+    public void encodeBinary(ServerResponse response, byte flags, int compressThreshold) {
+        binary = true;
+        while (true) {
+            wire.clear();
+            try {
+                WireCodec.encodeResponse(wire, response, flags);
+                break;
+            } catch (BufferOverflowException e) {
+                wire = ByteBuffer.allocate(wire.capacity() * 2);
+            }
+        }
+        result = wire;
+
+        int bodyLength = wire.position() - WireCodec.HEADER_SIZE;
+        if (compressThreshold > 0 && bodyLength >= compressThreshold) compress(flags, bodyLength);
+    }
+
+    private void compress(byte flags, int bodyLength) {
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(wire.array(), WireCodec.HEADER_SIZE, bodyLength);
+        deflater.finish();
+
+        packed.clear();
+        WireCodec.putHeader(packed, (byte) (flags | WireCodec.FLAG_DEFLATE));
+        WireCodec.putVarInt(packed, bodyLength);
+        while (!deflater.finished()) {
+            if (!packed.hasRemaining()) {
+                // Сжатие, не уложившееся в размер исходного тела, бесполезно
+                if (packed.position() >= wire.position()) break;
+                ByteBuffer bigger = ByteBuffer.allocate(packed.capacity() * 2);
+                packed.flip();
+                bigger.put(packed);
+                packed = bigger;
+            }
+            deflater.deflate(packed);
+        }
+        compressionNanos.add(System.nanoTime() - start);
+
+        if (deflater.finished() && packed.position() < wire.position()) {
+            result = packed;
+            compressedCount.increment();
+            compressedBytesIn.add(wire.position());
+            compressedBytesOut.add(packed.position());
+        }
+    }
+
+    /**
+     * @return Внутренний буфер; данные занимают первые {@link #getLength()} байт.
+     */
+    public byte[] getBuffer() {
+        return binary ? result.array() : output.getBuffer();
+    }
+
+    /**
+     * @return Длина последнего сериализованного ответа.
+     */
+    public int getLength() {
+        return binary ? result.position() : output.size();
+    }
+
+    /**
+     * @return true, если буфер вырос настолько, что его не стоит хранить в пуле.
+     */
+    public boolean isOversized() {
+        return output.getBuffer().length > MAX_RETAINED_SIZE || wire.capacity() > MAX_RETAINED_SIZE || packed.capacity() > MAX_RETAINED_SIZE;
+    }
+
+    /**
+     * @return Число сжатых ответов.
+     */
+    public static long getCompressedCount() {
+        return compressedCount.sum();
+    }
+
+    /**
+     * @return Число байт, сэкономленных сжатием.
+     */
+    public static long getBytesSaved() {
+        return compressedBytesIn.sum() - compressedBytesOut.sum();
+    }
+
+    /**
+     * @return Суммарный размер сжатых ответов до сжатия.
+     */
+    public static long getCompressedBytesIn() {
+        return compressedBytesIn.sum();
+    }
+
+    /**
+     * @return Время, затраченное на сжатие, в наносекундах.
+     */
+    public static long getCompressionNanos() {
+        return compressionNanos.sum();
+    }
+}
@@ -64,5 +64,11 @@ public enum ResponseType {
     /**
      * Indicates a request to terminate the program.
      */
-    EXIT;
+    EXIT,
+
+    /**
+     * Indicates that the server is overloaded and the request was not executed.
+     * The client may retry it later.
+     */
+    BUSY;
 }
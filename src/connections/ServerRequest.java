@@ -4,15 +4,18 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
+import util.TokenWrapper;
 import util.UserWrapper;
 
-public class ServerRequest extends Request implements Externalizable {
+public class ServerRequest extends Request implements Externalizable, IWireExternalizable {
     private static final long serialVersionUID = 1L;
     private Externalizable contentExt;
     private int clientCommandId;
     private int clientId;
     private UserWrapper user;
+    private String token; // Токен сессии, присланный вместо имени и пароля
 
     public ServerRequest() {
         super(-1, RequestType.PROCEED_COMMAND, "");
@@ -44,6 +47,14 @@ public class ServerRequest extends Request implements Externalizable {
         return user;
     }
 
+    public void setUser(UserWrapper user) {
+        this.user = user;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
 
     @Override
     public void writeExternal(ObjectOutput out) throws IOException {}
@@ -54,7 +65,27 @@ public class ServerRequest extends Request implements Externalizable {
         setType(RequestType.valueOf((String) in.readObject()));
         setContent((String) in.readObject());
         contentExt = (Externalizable) in.readObject();
-        user = (UserWrapper) in.readObject();
+        setCredentials(in.readObject());
     }
     
+
+    @Override
+    public void writeWire(ByteBuffer out) {}
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        clientCommandId = WireCodec.getVarInt(in);
+        setType(WireCodec.getEnum(in, RequestType.values()));
+        setContent(WireCodec.getString(in));
+        contentExt = (Externalizable) WireCodec.getContent(in);
+        setCredentials(WireCodec.getContent(in));
+    }
+
+    /**
+     * Клиент присылает либо имя и пароль ({@link UserWrapper}), либо токен сессии ({@link TokenWrapper}).
+     */
+    private void setCredentials(Object credentials) {
+        if (credentials instanceof TokenWrapper) token = ((TokenWrapper) credentials).getToken();
+        else user = (UserWrapper) credentials;
+    }
 }
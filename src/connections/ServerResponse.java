@@ -4,8 +4,9 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
-public class ServerResponse extends Response implements Externalizable {
+public class ServerResponse extends Response implements Externalizable, IWireExternalizable {
     private Externalizable contentExt;
     private int clientCommandId;
     private int clientId;
@@ -45,4 +46,15 @@ public class ServerResponse extends Response implements Externalizable {
     @Override
     public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {}
     
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putVarInt(out, clientCommandId);
+        WireCodec.putEnum(out, getType());
+        WireCodec.putEnum(out, getPrintType());
+        WireCodec.putContent(out, contentExt);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {}
 }
@@ -0,0 +1,347 @@
+package connections;
+
+import java.net.ProtocolException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import controls.flat_builder.FlatBuilderAdd;
+import controls.flat_builder.FlatBuilderUpdate;
+import models.Flat;
+import util.FlatPageWrapper;
+import util.InfoWrapper;
+import util.LongWrapper;
+import util.StringWrapper;
+import util.TokenWrapper;
+import util.UserWrapper;
+
+/**
+ * Компактный бинарный кодек для {@link ServerRequest}, {@link ServerResponse} и моделей.
+ * <p>
+ * Сообщение начинается с заголовка: магическое число (2 байта), версия формата и байт флагов.
+ * Целые числа записываются как varint в кодировке zigzag, перечисления — как порядковый номер,
+ * даты — как номер дня от эпохи, строки — как длина и байты UTF-8. Поэтому новые значения
+ * перечислений добавляются только в конец.
+ * <p>
+ * Клиенты, отправляющие запросы в этом формате, получают ответы в нём же; остальные клиенты
+ * продолжают работать через сериализацию Java.
+ */
+public class WireCodec {
+    /**
+     * Магическое число бинарного сообщения. Не совпадает с заголовком сериализации Java (0xACED)
+     * и с заголовком фрагмента {@link Fragment#MAGIC}.
+     */
+    public static final short MAGIC = (short) 0xF1A7;
+
+    /**
+     * Текущая версия формата.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * Размер заголовка сообщения в байтах.
+     */
+    public static final int HEADER_SIZE = 4;
+
+    /**
+     * Флаг запроса: клиент принимает ответы, сжатые {@link java.util.zip.Deflater}.
+     */
+    public static final byte FLAG_ACCEPT_DEFLATE = 0x01;
+
+    /**
+     * Флаг ответа: после заголовка записаны длина исходного тела (varint) и тело, сжатое Deflate.
+     */
+    public static final byte FLAG_DEFLATE = 0x01;
+
+    /**
+     * Флаг запроса: клиент подтверждает получение датаграмм, и ответы отправляются
+     * в режиме надёжной доставки {@link Reliable}.
+     */
+    public static final byte FLAG_RELIABLE = 0x02;
+
+    /**
+     * Конструкторы содержимого по тегам типов. Тег 0 означает null, остальные теги выдаются
+     * в порядке регистрации в {@link #register}, поэтому новый тип добавляется только в конец.
+     */
+    private static final List<Supplier<IWireExternalizable>> FACTORIES = new ArrayList<>();
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<>();
+
+    static {
+        FACTORIES.add(null);
+        register(StringWrapper.class, StringWrapper::new);
+        register(LongWrapper.class, LongWrapper::new);
+        register(UserWrapper.class, UserWrapper::new);
+        register(InfoWrapper.class, InfoWrapper::new);
+        register(Flat.class, Flat::new);
+        register(FlatBuilderAdd.class, FlatBuilderAdd::new);
+        register(FlatBuilderUpdate.class, FlatBuilderUpdate::new);
+        register(FlatPageWrapper.class, FlatPageWrapper::new);
+        register(TokenWrapper.class, TokenWrapper::new);
+    }
+
+    /**
+     * Назначает типу следующий свободный тег.
+     */
+    private static <T extends IWireExternalizable> void register(Class<T> type, Supplier<T> factory) {
+        TAGS.put(type, FACTORIES.size());
+        FACTORIES.add(factory::get);
+    }
+
+
+    /**
+     * Проверяет, начинается ли сообщение с заголовка бинарного формата. Позиция буфера не меняется.
+     *
+     * @param buffer Буфер с сообщением.
+     * @return true, если сообщение записано бинарным кодеком.
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_SIZE && buffer.getShort(buffer.position()) == MAGIC;
+    }
+
+    /**
+     * Возвращает флаги сообщения, не меняя позицию буфера.
+     *
+     * @param buffer Буфер с бинарным сообщением.
+     * @return Флаги сообщения.
+     */
+    public static byte peekFlags(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + 3);
+    }
+
+    /**
+     * Записывает заголовок сообщения.
+     *
+     * @param out   Буфер для записи.
+     * @param flags Флаги сообщения.
+     */
+    public static void putHeader(ByteBuffer out, byte flags) {
+        out.putShort(MAGIC);
+        out.put(VERSION);
+        out.put(flags);
+    }
+
+    /**
+     * Читает заголовок сообщения и проверяет версию формата.
+     *
+     * @param in Буфер с сообщением.
+     * @return Флаги сообщения.
+     * @throws ProtocolException Если заголовок некорректен или версия не поддерживается.
+     */
+    public static byte getHeader(ByteBuffer in) throws ProtocolException {
+        if (!isBinary(in)) throw new ProtocolException("Неверный заголовок сообщения");
+        in.getShort();
+        byte version = in.get();
+        if (version != VERSION) throw new ProtocolException("Неподдерживаемая версия формата: " + version);
+        return in.get();
+    }
+
+    /**
+     * Записывает ответ целиком: заголовок и тело.
+     *
+     * @param out      Буфер для записи.
+     * @param response Ответ.
+     * @param flags    Флаги сообщения.
+     */
+    public static void encodeResponse(ByteBuffer out, ServerResponse response, byte flags) {
+        putHeader(out, flags);
+        response.writeWire(out);
+    }
+
+    /**
+     * Читает запрос целиком: заголовок и тело.
+     *
+     * @param in Буфер с сообщением.
+     * @return Прочитанный запрос.
+     * @throws ProtocolException Если сообщение повреждено.
+     */
+    public static ServerRequest decodeRequest(ByteBuffer in) throws ProtocolException {
+        getHeader(in);
+        ServerRequest request = new ServerRequest();
+        try {
+            request.readWire(in);
+        } catch (BufferUnderflowException | IllegalArgumentException | ClassCastException e) {
+            throw new ProtocolException("Повреждённый запрос: " + e);
+        }
+        if (request.getType() == null || request.getContent() == null) throw new ProtocolException("В запросе нет команды");
+        return request;
+    }
+
+
+    public static void putVarLong(ByteBuffer out, long value) {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    public static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IllegalArgumentException("Слишком длинное число varint");
+    }
+
+    public static void putVarInt(ByteBuffer out, int value) {
+        putVarLong(out, value);
+    }
+
+    public static int getVarInt(ByteBuffer in) {
+        long value = getVarLong(in);
+        if (value != (int) value) throw new IllegalArgumentException("Число не помещается в int");
+        return (int) value;
+    }
+
+    public static void putBoolean(ByteBuffer out, boolean value) {
+        out.put((byte) (value ? 1 : 0));
+    }
+
+    public static boolean getBoolean(ByteBuffer in) {
+        return in.get() != 0;
+    }
+
+    /**
+     * Записывает строку как длину (плюс один, 0 — null) и байты UTF-8, без промежуточного массива.
+     */
+    public static void putString(ByteBuffer out, String value) {
+        if (value == null) {
+            putVarInt(out, 0);
+            return;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) length += 1;
+            else if (c < 0x800) length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) { length += 4; i++; }
+            else if (Character.isSurrogate(c)) length += 1;
+            else length += 3;
+        }
+        putVarInt(out, length + 1);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            }
+            else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (cp & 0x3F)));
+            }
+            else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            }
+            else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    public static String getString(ByteBuffer in) {
+        int length = getVarInt(in) - 1;
+        if (length < 0) return null;
+        if (length > in.remaining()) throw new BufferUnderflowException();
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+        else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Записывает значение перечисления как порядковый номер плюс один (0 — null).
+     */
+    public static void putEnum(ByteBuffer out, Enum<?> value) {
+        putVarInt(out, value == null ? 0 : value.ordinal() + 1);
+    }
+
+    public static <E extends Enum<E>> E getEnum(ByteBuffer in, E[] values) {
+        int ordinal = getVarInt(in) - 1;
+        if (ordinal < 0) return null;
+        if (ordinal >= values.length) throw new IllegalArgumentException("Неизвестное значение перечисления: " + ordinal);
+        return values[ordinal];
+    }
+
+    /**
+     * Записывает дату как номер дня от эпохи. Перед датой записывается признак наличия значения.
+     */
+    public static void putDate(ByteBuffer out, LocalDate value) {
+        putBoolean(out, value != null);
+        if (value != null) putVarLong(out, value.toEpochDay());
+    }
+
+    public static LocalDate getDate(ByteBuffer in) {
+        return getBoolean(in) ? LocalDate.ofEpochDay(getVarLong(in)) : null;
+    }
+
+    /**
+     * Записывает дату и время как секунды от эпохи (UTC) и наносекунды.
+     */
+    public static void putDateTime(ByteBuffer out, LocalDateTime value) {
+        putBoolean(out, value != null);
+        if (value == null) return;
+        putVarLong(out, value.toEpochSecond(ZoneOffset.UTC));
+        putVarInt(out, value.getNano());
+    }
+
+    public static LocalDateTime getDateTime(ByteBuffer in) {
+        if (!getBoolean(in)) return null;
+        long seconds = getVarLong(in);
+        return LocalDateTime.ofEpochSecond(seconds, getVarInt(in), ZoneOffset.UTC);
+    }
+
+    /**
+     * Записывает объект с тегом его типа. Вложенные поля моделей записываются без тегов.
+     *
+     * @param out   Буфер для записи.
+     * @param value Объект зарегистрированного типа, или null.
+     */
+    public static void putContent(ByteBuffer out, Object value) {
+        if (value == null) {
+            out.put((byte) 0);
+            return;
+        }
+        Integer tag = TAGS.get(value.getClass());
+        if (tag != null) {
+            out.put(tag.byteValue());
+            ((IWireExternalizable) value).writeWire(out);
+            return;
+        }
+        throw new IllegalArgumentException("Тип не поддерживается бинарным кодеком: " + value.getClass().getName());
+    }
+
+    public static Object getContent(ByteBuffer in) {
+        int tag = in.get();
+        if (tag == 0) return null;
+        if (tag < 0 || tag >= FACTORIES.size()) throw new IllegalArgumentException("Неизвестный тег типа: " + tag);
+        IWireExternalizable value = FACTORIES.get(tag).get();
+        value.readWire(in);
+        return value;
+    }
+}
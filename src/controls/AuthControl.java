@@ -1,19 +1,102 @@
 package controls;
 
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import util.Environment;
+
+/**
+ * Выдача и проверка токенов сессии.
+ * <p>
+ * Токен выдаётся командой log_in и имеет вид {@code имя.срок.подпись}: имя пользователя в Base64,
+ * момент истечения в миллисекундах и подпись HMAC-SHA256 первых двух частей. Проверка токена
+ * выполняется в памяти, без обращения к базе данных.
+ * <p>
+ * Ключ подписи берётся из переменной окружения token_secret; если она не задана, ключ
+ * генерируется при запуске, и токены перестают действовать после перезапуска сервера.
+ */
 public class AuthControl {
-    
-    public AuthControl() {
-        // Constructor logic if needed
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private static final SecretKeySpec KEY = createKey();
+    private static final long TTL_MILLIS = Environment.getLong("token_ttl", 3600) * 1000;
+
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(KEY);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new RuntimeException(ALGORITHM + " algorithm not available", e);
+        }
+    });
+
+    private static SecretKeySpec createKey() {
+        String secret = Environment.getString("token_secret", null);
+        byte[] key;
+        if (secret != null) {
+            key = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        else {
+            key = new byte[32];
+            new SecureRandom().nextBytes(key);
+        }
+        return new SecretKeySpec(key, ALGORITHM);
     }
 
     /**
-     * Authenticates a user based on the provided username and password.
+     * Выдаёт токен пользователю, прошедшему проверку пароля.
      *
-     * @param userName The username of the user.
-     * @param password The password of the user.
-     * @return true if authentication is successful, false otherwise.
+     * @param userName  Имя пользователя.
+     * @param expiresAt Момент истечения токена в миллисекундах.
+     * @return Подписанный токен.
      */
-    public boolean authenticate(String userName, String password) {
-        return true; // Placeholder for actual authentication logic
+    public static String issueToken(String userName, long expiresAt) {
+        String payload = ENCODER.encodeToString(userName.getBytes(StandardCharsets.UTF_8)) + "." + expiresAt;
+        return payload + "." + sign(payload);
+    }
+
+    /**
+     * Возвращает время жизни выдаваемых токенов.
+     *
+     * @return Время жизни в миллисекундах.
+     */
+    public static long getTtlMillis() {
+        return TTL_MILLIS;
+    }
+
+    /**
+     * Проверяет подпись и срок действия токена.
+     *
+     * @param token Токен из запроса.
+     * @return Имя пользователя, или null, если токен поддельный, повреждён или истёк.
+     */
+    public static String verifyToken(String token) {
+        int last = token.lastIndexOf('.');
+        int first = token.indexOf('.');
+        if (first <= 0 || last <= first) return null;
+        String payload = token.substring(0, last);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(last + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) return null;
+        try {
+            long expiresAt = Long.parseLong(payload.substring(first + 1));
+            if (expiresAt < System.currentTimeMillis()) return null;
+            return new String(DECODER.decode(payload.substring(0, first)), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String sign(String payload) {
+        return ENCODER.encodeToString(MAC.get().doFinal(payload.getBytes(StandardCharsets.UTF_8)));
     }
 }
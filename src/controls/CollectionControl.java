@@ -1,12 +1,21 @@
 package controls;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import consoles.Printer;
 import models.Flat;
+import util.Environment;
+import util.FlatPageWrapper;
 
 /**
  * The CollectionControl class manages a collection of {@link Flat} objects.
@@ -35,11 +44,91 @@ public class CollectionControl {
      */
     private Set<Long> occupiedIDs = new HashSet<>();
 
+    /**
+     * The flats of the collection indexed by ID.
+     */
+    private final Map<Long, Flat> flatsById = new HashMap<>();
+
+    /**
+     * The owners of the flats: flat ID to the ID of the user who created it ({@code created_by_user}).
+     * Access checks are answered from this map; the database still guards every modification.
+     */
+    private final Map<Long, Integer> owners = new HashMap<>();
+
+    /**
+     * The ID of the administrator, who has access to all flats.
+     */
+    private static final int ADMIN_ID = 1;
+
     private DataBaseControl dataBaseControl;
 
+    /**
+     * The write-behind journal, or null if modifications are written to the database synchronously.
+     * Enabled by the {@code write_behind} environment variable.
+     */
+    private JournalControl journal;
+
+    /**
+     * The background removal of Coordinates and Houses rows no flat refers to.
+     * Runs every {@code compaction_interval_ms} milliseconds; 0 disables it.
+     */
+    private CompactionControl compaction;
+
 
     private final Object collectionLock = new Object();
 
+    /**
+     * Sorted indexes of the collection used by {@link #getPage}, one per sort key.
+     * An index is built the first time its order is requested and is then kept up to date
+     * by every modification of the collection.
+     */
+    private final Map<String, TreeSet<Flat>> pageIndexes = new HashMap<>();
+
+    /**
+     * An order available for paginated listing: the comparator, and how the sort key of a flat
+     * is written into a cursor and read back as a flat that can be compared with the others.
+     */
+    private static class PageOrder {
+        private final Comparator<Flat> comparator;
+        private final Function<Flat, String> key;
+        private final BiFunction<Long, String, Flat> probe;
+
+        PageOrder(Comparator<Flat> comparator, Function<Flat, String> key, BiFunction<Long, String, Flat> probe) {
+            this.comparator = comparator;
+            this.key = key;
+            this.probe = probe;
+        }
+    }
+
+    /**
+     * The orders available for paginated listing. Flats with equal keys are ordered by ID.
+     */
+    private static final Map<String, PageOrder> PAGE_ORDERS = new LinkedHashMap<>();
+
+    static {
+        Comparator<Flat> byId = Comparator.comparing(Flat::getId);
+        PAGE_ORDERS.put("id", new PageOrder(byId, flat -> "",
+                (id, key) -> probe(id, null, null, 0, null, 0)));
+        PAGE_ORDERS.put("name", new PageOrder(Comparator.comparing(Flat::getName).thenComparing(byId), Flat::getName,
+                (id, key) -> probe(id, key, null, 0, null, 0)));
+        PAGE_ORDERS.put("area", new PageOrder(Comparator.comparing(Flat::getArea).thenComparing(byId), flat -> Float.toString(flat.getArea()),
+                (id, key) -> probe(id, null, null, Float.parseFloat(key), null, 0)));
+        PAGE_ORDERS.put("creation_date", new PageOrder(Comparator.comparing(Flat::getCreationDate).thenComparing(byId), flat -> flat.getCreationDate().toString(),
+                (id, key) -> probe(id, null, LocalDate.parse(key), 0, null, 0)));
+        PAGE_ORDERS.put("number_of_rooms", new PageOrder(Comparator.comparing(Flat::getNumberOfRooms).thenComparing(byId), flat -> flat.getNumberOfRooms().toString(),
+                (id, key) -> probe(id, null, null, 0, Long.valueOf(key), 0)));
+        PAGE_ORDERS.put("time_to_metro", new PageOrder(Comparator.comparing(Flat::getTimeToMetroByTransport).thenComparing(byId), flat -> Float.toString(flat.getTimeToMetroByTransport()),
+                (id, key) -> probe(id, null, null, 0, null, Float.parseFloat(key))));
+    }
+
+    /**
+     * Creates a flat that only carries the fields compared by the page orders,
+     * used to find the position of a cursor in a sorted index.
+     */
+    private static Flat probe(Long id, String name, LocalDate creationDate, float area, Long numberOfRooms, float timeToMetroByTransport) {
+        return new Flat(id, name, null, creationDate, area, numberOfRooms, timeToMetroByTransport, null, null, null);
+    }
+
     /**
      * Constructs a new CollectionControl instance and initializes the collection's metadata.
      */
@@ -47,20 +136,67 @@ public class CollectionControl {
         super();
         dataBaseControl = new DataBaseControl(printer);
 
+        // A journal left by an earlier run is replayed even if write-behind is now off:
+        // synchronous writes must not land under entries that a later replay would apply on top of them
+        boolean writeBehind = Environment.getBoolean("write_behind", false);
+        Path journalFile = Path.of(Environment.getString("journal_file", "flats.journal"));
+        boolean journalNeeded = writeBehind || JournalControl.hasPending(journalFile);
+
         try {
-            flatsCollection = dataBaseControl.load();
+            dataBaseControl.migrate();
+        }
+        catch (SQLException e) {
+            printer.printError("Ошибка обновления схемы базы данных: " + e.getMessage());
+            // The journal checkpoint table is created by a migration
+            if (journalNeeded) throw new IllegalStateException("Schema migration failed, the journal cannot be replayed", e);
+        }
+
+        if (journalNeeded) {
+            JournalControl candidate = new JournalControl(journalFile, dataBaseControl,
+                    Environment.getInt("journal_batch", 1000), Environment.getLong("journal_max_bytes", 64L * 1024 * 1024),
+                    Environment.getInt("journal_id_block", 1000), printer);
+            try {
+                candidate.replay();
+            }
+            catch (IOException | SQLException e) {
+                printer.printError("Журнал отложенной записи " + journalFile + " не применён к базе данных, сервер не может быть запущен: " + e.getMessage());
+                throw new IllegalStateException("Journal replay failed: " + journalFile, e);
+            }
+            if (writeBehind) journal = candidate;
+            else candidate.close();
+        }
+
+        try {
+            flatsCollection = dataBaseControl.load(owners);
         }
         catch (SQLException e) {
             printer.printError("Ошибка загрузки коллекции из базы данных: " + e.getMessage());
             flatsCollection = new HashSet<>();
         }
 
+        try {
+            dataBaseControl.loadUsers();
+        }
+        catch (SQLException e) {
+            printer.printError("Ошибка загрузки пользователей из базы данных: " + e.getMessage());
+        }
+
         synchronized (collectionLock) {
             for (Flat flat : flatsCollection) {
                 occupiedIDs.add(flat.getId());
+                flatsById.put(flat.getId(), flat);
             }
         }
 
+        if (journal != null) journal.start();
+
+        long compactionInterval = Environment.getLong("compaction_interval_ms", 600_000);
+        if (compactionInterval > 0) {
+            compaction = new CompactionControl(dataBaseControl, Environment.getInt("compaction_batch", 1000),
+                    Environment.getLong("compaction_pause_ms", 200), printer);
+            compaction.start(compactionInterval);
+        }
+
         initTime = LocalDateTime.now();
         lastSaveTime = null;
     }
@@ -114,11 +250,22 @@ public class CollectionControl {
      */
     public Flat getById(Long id) {
         synchronized (collectionLock) {
-            for (Flat flat : flatsCollection) {
-                if (flat.getId() == id) return flat;
-            }
+            return flatsById.get(id);
+        }
+    }
+
+    /**
+     * Checks whether a user may modify or remove a flat.
+     *
+     * @param id     The ID of the flat.
+     * @param userId The ID of the user.
+     * @return True if the user owns the flat or is the administrator.
+     */
+    public boolean hasAccess(Long id, int userId) {
+        synchronized (collectionLock) {
+            Integer owner = owners.get(id);
+            return (owner != null && owner == userId) || userId == ADMIN_ID;
         }
-        return null;
     }
 
     /**
@@ -128,29 +275,51 @@ public class CollectionControl {
      * @return The removed {@link Flat} object, or null if not found.
      */
     public Flat removeById(Long id, String userName) {
-        int userId;
-        try {
-            userId = dataBaseControl.getUserIdFromUsername(userName);
-        }
-        catch (Exception e) {
-            System.out.println("Ошибка получения ID пользователя: " + e.getMessage());
-            return null;
+        Integer userId = getUserId(userName);
+        if (userId == null) return null;
+        return removeById(id, userId);
+    }
+
+    /**
+     * Removes a {@link Flat} object by its ID on behalf of a user whose ID is already known.
+     * Flats the user does not own are skipped without a database query.
+     */
+    private Flat removeById(Long id, int userId) {
+        if (!hasAccess(id, userId)) return null;
+        if (journal != null) {
+            Flat flat;
+            synchronized (collectionLock) {
+                flat = flatsById.get(id);
+                if (flat == null || !ownsInDatabase(id, userId)) return null;
+            }
+            JournalControl.Entry entry;
+            try {
+                entry = journal.remove(List.of(id), userId, () -> {
+                    synchronized (collectionLock) {
+                        if (!flatsById.containsKey(id) || !ownsInDatabase(id, userId)) return 0;
+                        detach(id);
+                        return 1;
+                    }
+                });
+            }
+            catch (IOException e) {
+                System.out.println("Ошибка записи журнала: " + e.getMessage());
+                return null;
+            }
+            return journal.await(entry) > 0 ? flat : null;
         }
         synchronized (collectionLock) {
-            for (Flat flat : flatsCollection) {
-                if (flat.getId() == id) {
-                    try {
-                        if (dataBaseControl.removeFlat(id, userId)) {
-                            flatsCollection.remove(flat);
-                            occupiedIDs.remove(id);
-                            return flat;
-                        }
-                    }
-                    catch (SQLException e) {
-                        System.out.println("Ошибка удаления квартиры из базы данных: " + e.getMessage());
-                    }
+            Flat flat = flatsById.get(id);
+            if (flat == null) return null;
+            try {
+                if (dataBaseControl.removeFlat(id, userId)) {
+                    detach(id);
+                    return flat;
                 }
             }
+            catch (SQLException e) {
+                System.out.println("Ошибка удаления квартиры из базы данных: " + e.getMessage());
+            }
         }
         return null;
     }
@@ -159,12 +328,132 @@ public class CollectionControl {
      * Clears the entire collection, resetting all associated metadata.
      */
     public void clear(String userName) {
-        Long[] idsCopy;
+        Integer userId = getUserId(userName);
+        if (userId == null) return;
+        removeAll(userId, flat -> true);
+    }
+
+    /**
+     * Removes all flats of the user that match the filter with a single database query,
+     * then removes the flats actually deleted from the database from the collection.
+     *
+     * @return The number of flats removed.
+     */
+    private long removeAll(int userId, Predicate<Flat> filter) {
+        if (journal != null) {
+            List<Long> ids = new ArrayList<>();
+            synchronized (collectionLock) {
+                for (Long id : ownedIds(userId, filter)) {
+                    if (ownsInDatabase(id, userId)) ids.add(id);
+                }
+            }
+            if (ids.isEmpty()) return 0;
+            JournalControl.Entry entry;
+            try {
+                entry = journal.remove(ids, userId, () -> {
+                    int removed = 0;
+                    synchronized (collectionLock) {
+                        for (Long id : ids) {
+                            if (!flatsById.containsKey(id) || !ownsInDatabase(id, userId)) continue;
+                            detach(id);
+                            removed++;
+                        }
+                    }
+                    return removed;
+                });
+            }
+            catch (IOException e) {
+                System.out.println("Ошибка записи журнала: " + e.getMessage());
+                return 0;
+            }
+            return Math.max(0, journal.await(entry));
+        }
+        List<Long> removed;
+        try {
+            removed = dataBaseControl.removeFlats(ownedIds(userId, filter), userId);
+        }
+        catch (SQLException e) {
+            System.out.println("Ошибка удаления квартир из базы данных: " + e.getMessage());
+            return 0;
+        }
+        synchronized (collectionLock) {
+            for (Long id : removed) detach(id);
+        }
+        return removed.size();
+    }
+
+    /**
+     * Removes a flat from the collection and its indexes. Must be called under the collection lock.
+     */
+    private void detach(Long id) {
+        Flat flat = flatsById.remove(id);
+        if (flat != null) {
+            flatsCollection.remove(flat);
+            for (TreeSet<Flat> index : pageIndexes.values()) index.remove(flat);
+        }
+        owners.remove(id);
+        occupiedIDs.remove(id);
+    }
+
+    /**
+     * Adds a flat to the collection and its indexes. Must be called under the collection lock.
+     */
+    private void attach(Flat flat, int userId) {
+        flatsCollection.add(flat);
+        flatsById.put(flat.getId(), flat);
+        owners.put(flat.getId(), userId);
+        occupiedIDs.add(flat.getId());
+        for (TreeSet<Flat> index : pageIndexes.values()) index.add(flat);
+    }
+
+    /**
+     * Replaces a flat of the collection with a flat with the same ID. Must be called under the collection lock.
+     */
+    private void replace(Flat flat) {
+        Flat previous = flatsById.put(flat.getId(), flat);
+        flatsCollection.removeIf(f -> f.getId().equals(flat.getId()));
+        flatsCollection.add(flat);
+        for (TreeSet<Flat> index : pageIndexes.values()) {
+            if (previous != null) index.remove(previous);
+            index.add(flat);
+        }
+    }
+
+    /**
+     * Determines whether the database will apply a modification of the flat on behalf of the user:
+     * the database only modifies flats with {@code created_by_user} equal to the user, without
+     * an exception for the administrator. Journaled modifications are checked with this rule
+     * when they are written and again when they are applied to the collection after the journal
+     * is flushed, so that the collection and the database stay the same.
+     */
+    private boolean ownsInDatabase(Long id, int userId) {
+        Integer owner = owners.get(id);
+        return owner != null && owner == userId;
+    }
+
+    /**
+     * Returns the IDs of the flats that the user may remove and that match the filter.
+     */
+    private List<Long> ownedIds(int userId, Predicate<Flat> filter) {
+        List<Long> ids = new ArrayList<>();
         synchronized (collectionLock) {
-            idsCopy = occupiedIDs.toArray(new Long[occupiedIDs.size()]);
+            for (Flat flat : flatsCollection) {
+                Integer owner = owners.get(flat.getId());
+                if (((owner != null && owner == userId) || userId == ADMIN_ID) && filter.test(flat)) ids.add(flat.getId());
+            }
         }
-        for (long id : idsCopy) {
-            removeById(id, userName);
+        return ids;
+    }
+
+    private Integer getUserId(String userName) {
+        try {
+            Integer userId = dataBaseControl.getUserIdFromUsername(userName);
+            if (userId == null) System.out.println("Пользователь " + userName + " не найден");
+            return userId;
+        }
+        catch (Exception e) {
+            System.out.println("Ошибка получения ID пользователя: " + e.getMessage());
+            return null;
         }
     }
 
@@ -182,13 +471,29 @@ public class CollectionControl {
             System.out.println("Ошибка получения ID пользователя: " + e.getMessage());
             return false;
         }
+        if (journal != null) {
+            JournalControl.Entry entry;
+            try {
+                flat.setId(journal.reserveId());
+                entry = journal.add(flat, userId, () -> {
+                    synchronized (collectionLock) {
+                        attach(flat, userId);
+                    }
+                    return 1;
+                });
+            }
+            catch (SQLException | IOException e) {
+                System.out.println("Ошибка добавления квартиры в журнал: " + e.getMessage());
+                return false;
+            }
+            return journal.await(entry) > 0;
+        }
         try {
             Long flat_id = dataBaseControl.insertFlat(flat, userId);
             if (flat_id != null) {
                 flat.setId(flat_id);
                 synchronized (collectionLock) {
-                    flatsCollection.add(flat);
-                    occupiedIDs.add(flat.getId());
+                    attach(flat, userId);
                 }
                 return true;
             }
@@ -208,11 +513,32 @@ public class CollectionControl {
             System.out.println("Ошибка получения ID пользователя: " + e.getMessage());
             return false;
         }
+        if (!hasAccess(flat.getId(), userId)) return false;
+        if (journal != null) {
+            synchronized (collectionLock) {
+                if (!flatsById.containsKey(flat.getId()) || !ownsInDatabase(flat.getId(), userId)) return false;
+            }
+            JournalControl.Entry entry;
+            try {
+                entry = journal.update(flat, userId, () -> {
+                    synchronized (collectionLock) {
+                        // The same check as the created_by_user condition of the UPDATE the journal record becomes
+                        if (!flatsById.containsKey(flat.getId()) || !ownsInDatabase(flat.getId(), userId)) return 0;
+                        replace(flat);
+                        return 1;
+                    }
+                });
+            }
+            catch (IOException e) {
+                System.out.println("Ошибка записи журнала: " + e.getMessage());
+                return false;
+            }
+            return journal.await(entry) > 0;
+        }
         try {
             if (dataBaseControl.modifyFlat(flat.getId(), flat, userId)) {
                 synchronized (collectionLock) {
-                    flatsCollection.removeIf(f -> f.getId().equals(flat.getId()));
-                    flatsCollection.add(flat);
+                    replace(flat);
                 }
                 return true;
             }
@@ -245,21 +571,9 @@ public class CollectionControl {
      * @return The number of flats removed.
      */
     public long removeGreater(Flat base, String userName) {
-        List<Long> toRemove = new ArrayList<>();
-        long count = 0;
-        synchronized (collectionLock) {
-            for (Flat flat : flatsCollection) {
-                if (flat.compareTo(base) > 0) {
-                    toRemove.add(flat.getId());
-                }
-            }
-        }
-        for (Long id : toRemove) {
-            if (removeById(id, userName) != null) {
-                count += 1;
-            }
-        }
-        return count;
+        Integer userId = getUserId(userName);
+        if (userId == null) return 0;
+        return removeAll(userId, flat -> flat.compareTo(base) > 0);
     }
     
     /**
@@ -269,21 +583,9 @@ public class CollectionControl {
      * @return The number of flats removed.
      */
     public long removeLower(Flat base, String userName) {
-        List<Long> toRemove = new ArrayList<>();
-        long count = 0;
-        synchronized (collectionLock) {
-            for (Flat flat : flatsCollection) {
-                if (flat.compareTo(base) < 0) {
-                    toRemove.add(flat.getId());
-                }
-            }
-        }
-        for (Long id : toRemove) {
-            if (removeById(id, userName) != null) {
-                count += 1;
-            }
-        }
-        return count;
+        Integer userId = getUserId(userName);
+        if (userId == null) return 0;
+        return removeAll(userId, flat -> flat.compareTo(base) < 0);
     }
 
     /**
@@ -315,6 +617,66 @@ public class CollectionControl {
         }
     }
 
+    /**
+     * Returns the names of the sort keys accepted by {@link #getPage}.
+     *
+     * @return The sort keys.
+     */
+    public static Set<String> getPageOrders() {
+        return PAGE_ORDERS.keySet();
+    }
+
+    /**
+     * Retrieves one page of the collection in the given order.
+     * <p>
+     * The cursor holds the sort key and the ID of the last flat of the previous page, and the
+     * page starts right after that position in the sorted index of the order, so the cost of
+     * a page depends on its size, not on the size of the collection. Flats added or removed
+     * between pages do not shift the listing: every flat that stays unchanged is listed exactly once.
+     *
+     * @param sort   The sort key, one of {@link #getPageOrders()}.
+     * @param size   The maximum number of flats in the page.
+     * @param cursor The cursor returned with the previous page, or null for the first page.
+     * @return The page of flats with the cursor of the next page.
+     * @throws IllegalArgumentException If the sort key or the cursor is invalid.
+     */
+    public FlatPageWrapper getPage(String sort, int size, String cursor) {
+        PageOrder order = PAGE_ORDERS.get(sort);
+        if (order == null) throw new IllegalArgumentException("Неизвестный ключ сортировки: " + sort);
+
+        Flat after = null;
+        if (cursor != null) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(";", 3);
+                if (parts.length != 3 || !parts[0].equals(sort)) throw new IllegalArgumentException("Неверный курсор");
+                after = order.probe.apply(Long.parseLong(parts[1]), parts[2]);
+            }
+            catch (RuntimeException e) {
+                throw new IllegalArgumentException("Неверный курсор");
+            }
+        }
+
+        List<Flat> flats = new ArrayList<>();
+        String next = null;
+        int total;
+        synchronized (collectionLock) {
+            TreeSet<Flat> index = pageIndexes.computeIfAbsent(sort, key -> {
+                TreeSet<Flat> created = new TreeSet<>(order.comparator);
+                created.addAll(flatsCollection);
+                return created;
+            });
+            Iterator<Flat> iterator = (after == null ? index : index.tailSet(after, false)).iterator();
+            while (flats.size() < size && iterator.hasNext()) flats.add(iterator.next());
+            if (iterator.hasNext() && !flats.isEmpty()) {
+                Flat last = flats.get(flats.size() - 1);
+                String state = sort + ";" + last.getId() + ";" + order.key.apply(last);
+                next = Base64.getUrlEncoder().withoutPadding().encodeToString(state.getBytes(StandardCharsets.UTF_8));
+            }
+            total = index.size();
+        }
+        return new FlatPageWrapper(flats, next, total);
+    }
+
     /**
      * Retrieves a set of unique values for the time to metro by transport across all flats.
      *
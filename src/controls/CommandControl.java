@@ -49,6 +49,7 @@ public class CommandControl implements IRequestProceeder{
         registerCommand("help", new Help.Factory());
         registerCommand("info", new Info.Factory());
         registerCommand("show", new Show.Factory());
+        registerCommand("show_page", new ShowPage.Factory());
         registerCommand("add", new Add.Factory());
         registerCommand("add_random", new AddRandom.Factory());
         registerCommand("update", new Update.Factory());
@@ -65,6 +66,7 @@ public class CommandControl implements IRequestProceeder{
         registerCommand("print_unique_time_to_metro_by_transport", new PrintUniqueTimeToMetroByTransport.Factory());
         registerCommand("get_by_id", new GetById.Factory());
         registerCommand("log_in", new LogIn.Factory());
+        registerCommand("stats", new Stats.Factory());
     }
 
 
@@ -96,6 +98,15 @@ public class CommandControl implements IRequestProceeder{
         getCommands().put(name, commandFactory);
     }
 
+    /**
+     * Retrieves the {@link CollectionControl} shared by all commands.
+     *
+     * @return The {@link CollectionControl} instance.
+     */
+    public CollectionControl getCollectionControl() {
+        return collectionControl;
+    }
+
     /**
      * Retrieves the set of registered command names.
      *
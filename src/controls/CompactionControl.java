@@ -0,0 +1,103 @@
+package controls;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import consoles.Printer;
+
+/**
+ * Фоновое удаление строк Coordinates и Houses, на которые больше не ссылается ни одна квартира.
+ * <p>
+ * Такие строки остаются после удаления квартир. Таблица просматривается диапазонами id
+ * фиксированного размера, каждый диапазон удаляется отдельным коротким запросом, поэтому
+ * блокировки держатся недолго. Между запросами поток делает паузу не короче заданной и не короче
+ * времени самого запроса, умноженного на {@link #PAUSE_RATIO}, так что очистка занимает базу
+ * лишь малую часть времени и не мешает запросам клиентов.
+ */
+public class CompactionControl {
+    /**
+     * Таблицы, из которых удаляются строки без ссылок, и столбцы Flats, которые на них ссылаются.
+     */
+    private static final String[][] TABLES = {
+        {"Coordinates", "coordinates_id"},
+        {"Houses", "house_id"}
+    };
+
+    private static final int PAUSE_RATIO = 4; // Пауза не короче четырёх длительностей запроса: не больше 20% времени базы
+
+    private final DataBaseControl dataBaseControl;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final Printer printer;
+    private final AtomicLong reclaimed = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "db-compaction");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * @param batchSize   Размер диапазона id, просматриваемого одним запросом.
+     * @param pauseMillis Минимальная пауза между запросами.
+     */
+    public CompactionControl(DataBaseControl dataBaseControl, int batchSize, long pauseMillis, Printer printer) {
+        this.dataBaseControl = dataBaseControl;
+        this.batchSize = Math.max(1, batchSize);
+        this.pauseMillis = Math.max(0, pauseMillis);
+        this.printer = printer;
+        StatsControl.register("db.compaction.runs", runs::get);
+        StatsControl.register("db.compaction.reclaimed", reclaimed::get);
+    }
+
+    /**
+     * Запускает очистку с заданным интервалом между окончанием одного прохода и началом следующего.
+     *
+     * @param intervalMillis Интервал в миллисекундах.
+     */
+    public void start(long intervalMillis) {
+        scheduler.scheduleWithFixedDelay(this::run, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Один проход по всем таблицам.
+     */
+    private void run() {
+        long total = 0;
+        try {
+            for (String[] table : TABLES) {
+                total += compact(table[0], table[1]);
+            }
+        } catch (SQLException e) {
+            printer.printError("Ошибка очистки неиспользуемых строк базы данных: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        runs.incrementAndGet();
+        if (total > 0) printer.println("Очистка базы данных: удалено неиспользуемых строк: " + total + ".");
+    }
+
+    private long compact(String table, String column) throws SQLException, InterruptedException {
+        long maxId = dataBaseControl.getMaxId(table);
+        long deleted = 0;
+        for (long from = 0; from < maxId; from += batchSize) {
+            long startedAt = System.nanoTime();
+            int count = dataBaseControl.deleteOrphans(table, column, from, Math.min(maxId, from + batchSize));
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            deleted += count;
+            reclaimed.addAndGet(count);
+            Thread.sleep(Math.max(pauseMillis, elapsedMillis * PAUSE_RATIO));
+        }
+        return deleted;
+    }
+}
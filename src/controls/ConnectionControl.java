@@ -1,77 +1,258 @@
 package controls;
 
+import connections.Fragment;
+import connections.FragmentAssembler;
 import connections.PrintType;
+import connections.Reliable;
+import connections.ResponseEncoder;
 import connections.ResponseType;
 import connections.ServerRequest;
 import connections.ServerResponse;
+import connections.WireCodec;
 import consoles.Printer;
+import util.Environment;
+import util.ObjectPool;
 import util.StringWrapper;
+import util.UserWrapper;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.Thread;
 import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 public class ConnectionControl {
-    static class Sender extends RecursiveAction {
-        private final int bufferSize = 32768; // Размер буфера для передачи данных
-        private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    class Sender extends RecursiveAction {
         private ServerResponse response;
-        private InetSocketAddress clientAddress;
-        private Printer printer;
-        private DatagramChannel channel;
+        private byte[] message; // Уже закодированный ответ, повторяемый из кэша
+        private Session session;
+        private int messageId;
+        private boolean tracked = true; // Запрос ответа записан в кэш повторов, и ответ нужно в нём отметить
 
-        public Sender(ServerResponse response, InetSocketAddress clientAddress, DatagramChannel channel, Printer printer) {
+        public Sender(ServerResponse response, Session session, int messageId) {
             this.response = response;
-            this.clientAddress = clientAddress;
-            this.channel = channel;
-            this.printer = printer;
+            this.session = session;
+            this.messageId = messageId;
         }
-        
 
-        private byte[] serializeResponse(ServerResponse response) {
-            try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-                ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-                response.writeExternal(objectOutputStream); // Вызываем метод writeExternal
-                objectOutputStream.flush();
-                return byteArrayOutputStream.toByteArray(); // Возвращаем массив байтов
-            } catch (IOException e) {
-                printer.printError("Ошибка при сериализации ответа: " + e.getMessage());
-                return new byte[0];
-            }
+        /**
+         * @param tracked false, если запрос не проходил через кэш повторов и ответ не должен его менять.
+         */
+        public Sender(ServerResponse response, Session session, int messageId, boolean tracked) {
+            this(response, session, messageId);
+            this.tracked = tracked;
+        }
+
+        public Sender(byte[] message, Session session, int messageId) {
+            this.message = message;
+            this.session = session;
+            this.messageId = messageId;
         }
 
 
         @Override
         protected void compute() {
+            ByteBuffer buffer = bufferPool.borrow();
             try {
-                buffer.clear();
-                byte[] data = serializeResponse(response);
-                buffer.put(data);
-                buffer.flip();
-                channel.send(buffer, clientAddress);
+                if (message != null) {
+                    transmit(message, message.length, buffer);
+                    return;
+                }
+
+                ResponseEncoder encoder = encoderPool.borrow();
+                boolean reusable = true;
+                try {
+                    try {
+                        if (session.isBinary()) encoder.encodeBinary(response, (byte) 0, session.isAcceptsDeflate() ? compressThreshold : 0);
+                        else encoder.encode(response);
+                    } catch (IOException | RuntimeException e) {
+                        reusable = false;
+                        printer.printError("Ошибка при сериализации ответа: " + e.getMessage());
+                        // Ответ не будет отправлен: повтор запроса должен быть выполнен заново, а не отброшен
+                        if (tracked) deduplication.forget(session.getId(), response.getClientCommandId());
+                        return;
+                    }
+                    if (tracked) {
+                        // Отказ из-за перегрузки не кэшируем: повтор запроса должен быть выполнен
+                        if (response.getType() == ResponseType.BUSY) deduplication.forget(session.getId(), response.getClientCommandId());
+                        else deduplication.complete(session.getId(), response.getClientCommandId(), encoder.getBuffer(), encoder.getLength());
+                    }
+                    transmit(encoder.getBuffer(), encoder.getLength(), buffer);
+                } finally {
+                    if (reusable && !encoder.isOversized()) encoderPool.release(encoder);
+                }
             } catch (IOException e) {
                 printer.printError("Ошибка при отправке данных: " + e.getMessage());
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+
+        private void transmit(byte[] data, int length, ByteBuffer buffer) throws IOException {
+            TcpControl.Connection connection = session.getConnection();
+            if (connection != null) {
+                connection.send(data, length);
+                return;
+            }
+
+            ReliabilityControl.Window window = session.getWindow();
+            int reserved = window == null ? 0 : Reliable.HEADER_SIZE; // Место под заголовок надёжной доставки
+            if (length <= Fragment.MAX_DATAGRAM_SIZE - reserved) {
+                buffer.clear();
+                buffer.put(data, 0, length);
+                buffer.flip();
+                send(window, buffer);
+                return;
+            }
+
+            // Ответ не помещается в одну датаграмму: отправляем фрагментами
+            int payloadSize = Fragment.MAX_PAYLOAD_SIZE - reserved;
+            int count = Fragment.countFor(length, payloadSize);
+            for (int index = 0; index < count; index++) {
+                int offset = index * payloadSize;
+                buffer.clear();
+                Fragment.writeHeader(buffer, messageId, index, count);
+                buffer.put(data, offset, Math.min(payloadSize, length - offset));
+                buffer.flip();
+                send(window, buffer);
+            }
+        }
+
+        private void send(ReliabilityControl.Window window, ByteBuffer buffer) throws IOException {
+            if (window == null) session.getChannel().send(buffer, session.getAddress());
+            else reliability.send(window, buffer);
+        }
+    }
+
+
+    /**
+     * Слушатель одного UDP-канала: свой {@link Selector}, свой приёмный буфер и свой поток.
+     */
+    class Listener implements Runnable {
+        private final DatagramChannel channel;
+        private final Selector selector;
+        private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+
+        Listener(DatagramChannel channel, Selector selector) {
+            this.channel = channel;
+            this.selector = selector;
+        }
+
+        /**
+         * Принимает запросы в цикле, пока канал открыт. Поток блокируется в {@link Selector#select()}
+         * до появления данных, после чего из канала вычитываются все накопившиеся датаграммы.
+         */
+        @Override
+        public void run() {
+            while (channel.isOpen()) {
+                try {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    drain();
+                } catch (ClosedSelectorException | ClosedChannelException e) {
+                    return;
+                } catch (IOException e) {
+                    printer.printError("Ошибка при чтении данных: " + e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Вычитывает из канала все датаграммы, пока {@link DatagramChannel#receive} не вернёт null.
+         */
+        private void drain() throws IOException {
+            while (true) {
+                buffer.clear();
+                InetSocketAddress clientAddress = (InetSocketAddress) channel.receive(buffer);
+                if (clientAddress == null) return;
+                buffer.flip();
+
+                read(clientAddress);
+            }
+        }
+
+        /**
+         * Обрабатывает принятую датаграмму, находящуюся в буфере. Поток приёма только декодирует
+         * запрос и ставит его в очередь этапа аутентификации.
+         *
+         * @param clientAddress Адрес отправителя.
+         */
+        private void read(InetSocketAddress clientAddress) throws IOException {
+            ByteBuffer message = buffer;
+            if (Reliable.isAck(buffer)) {
+                reliability.onAck(sessions.touch(clientAddress), buffer);
+                return;
+            }
+            if (Fragment.isFragment(buffer)) {
+                Fragment fragment = Fragment.read(buffer);
+                byte[] assembled = fragment == null ? null : assembler.accept(clientAddress, fragment);
+                if (assembled == null) return;
+                message = ByteBuffer.wrap(assembled);
+            }
+
+            Session session = sessions.touch(clientAddress);
+            session.setChannel(channel);
+            int clientId = session.getId();
+            if (!rateLimits.allowSession(session)) return;
+
+            int start = message.position();
+            boolean binary = WireCodec.isBinary(message);
+            ServerRequest request = decode(session, message);
+            if (request != null) {
+                authorize(session, request);
+                return;
+            }
+
+            if (!binary) {
+                byte[] data = new byte[message.limit() - start];
+                message.get(start, data);
+                String received = new String(data);
+                if (received.equals("echo")) {
+                    printer.println("Получено echo от клиента " + clientId);
+                    buffer.clear();
+                    buffer.put("OK".getBytes());
+                    buffer.flip();
+                    channel.send(buffer, clientAddress);
+                }
+                else {
+                    buffer.clear();
+                    buffer.put("NO".getBytes());
+                    buffer.flip();
+                    channel.send(buffer, clientAddress);
+                }
             }
         }
     }
 
 
-    private DatagramChannel channel;
-    private Selector selector;
+    private final List<Listener> listeners = new ArrayList<>(); // Слушатели UDP-каналов, по одному на поток
     private final int bufferSize = 32768; // Размер буфера для передачи данных
-    private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-    private final List<InetSocketAddress> connectedUsers = new ArrayList<>(); // Список подключенных пользователей
+    private final SessionControl sessions; // Реестр подключенных клиентов
+    private final FragmentAssembler assembler = new FragmentAssembler(1024, 30_000); // Сборка фрагментированных запросов
+    private final AtomicInteger messageIds = new AtomicInteger(); // Id исходящих сообщений для фрагментации
+    private final ObjectPool<ByteBuffer> bufferPool = new ObjectPool<>(256, () -> ByteBuffer.allocateDirect(Fragment.MAX_DATAGRAM_SIZE)); // Буферы датаграмм для отправки
+    private final ObjectPool<ResponseEncoder> encoderPool = new ObjectPool<>(64, ResponseEncoder::new); // Сериализаторы ответов
+    private final int compressThreshold = Environment.getInt("compress_threshold", 512); // Минимальный размер тела ответа для сжатия
+    private final DeduplicationControl deduplication = new DeduplicationControl(10_000, Environment.getLong("dedup_max_bytes", 64L * 1024 * 1024), 60_000, 1 << 20); // Ответы на недавние запросы для повторной отправки
+    private final RateLimitControl rateLimits = new RateLimitControl(Environment.getInt("rate_session_per_sec", 200), Environment.getInt("rate_session_burst", 400),
+            Environment.getInt("rate_user_per_sec", 100), Environment.getInt("rate_user_burst", 200), 10_000); // Ограничение частоты запросов
+    private final Stage authStage = new Stage("auth", Environment.getInt("auth_threads", 4), Environment.getInt("auth_queue", 1024)); // Этап аутентификации запросов
+    private volatile TcpControl tcp; // Транспорт TCP, null — если он выключен или порт занят
+    private volatile Consumer<ServerRequest> handler; // Обработчик запросов, принятых любым транспортом
+    private final ReliabilityControl reliability; // Надёжная доставка ответов для клиентов, которые её запросили
     private Printer printer;
     private DataBaseControl dataBaseControl; // Экземпляр класса для управления авторизацией
     Thread.Builder.OfVirtual builder = Thread.ofVirtual();
@@ -82,15 +263,56 @@ public class ConnectionControl {
      * @param port Порт, на котором сервер будет принимать данные.
      */
     public ConnectionControl(int port, Printer printer) {
+        this(port, 1, printer, new DataBaseControl(printer));
+    }
+
+    /**
+     * Инициализирует несколько UDP-каналов на одном порту. Если каналов больше одного,
+     * они открываются с опцией SO_REUSEPORT, и ядро распределяет между ними датаграммы
+     * по адресу клиента. Если опция не поддерживается, открывается один канал.
+     *
+     * @param port            Порт, на котором сервер будет принимать данные.
+     * @param listenerCount   Число каналов и потоков приёма.
+     * @param dataBaseControl {@link DataBaseControl}, общий с коллекцией, чтобы справочник пользователей был один.
+     */
+    public ConnectionControl(int port, int listenerCount, Printer printer, DataBaseControl dataBaseControl) {
         this.printer = printer;
-        dataBaseControl = new DataBaseControl(printer);
+        this.dataBaseControl = dataBaseControl;
+        sessions = new SessionControl(10 * 60 * 1000, printer);
+        deduplication.start();
+        reliability = new ReliabilityControl(Environment.getInt("reliable_window", 64), Environment.getInt("reliable_backlog", 4096),
+                Environment.getInt("reliable_attempts", 10), Environment.getLong("reliable_rto", 200), printer);
+        StatsControl.register("send.buffer_pool.hits", bufferPool::getHits);
+        StatsControl.register("send.buffer_pool.misses", bufferPool::getMisses);
+        StatsControl.register("send.encoder_pool.hits", encoderPool::getHits);
+        StatsControl.register("send.encoder_pool.misses", encoderPool::getMisses);
+        StatsControl.register("compress.responses", ResponseEncoder::getCompressedCount);
+        StatsControl.register("compress.bytes_in", ResponseEncoder::getCompressedBytesIn);
+        StatsControl.register("compress.bytes_saved", ResponseEncoder::getBytesSaved);
+        StatsControl.register("compress.time_ns", ResponseEncoder::getCompressionNanos);
+
+        if (listenerCount > 1) {
+            try (DatagramChannel probe = DatagramChannel.open()) {
+                if (!probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                    printer.printWarning("SO_REUSEPORT не поддерживается, будет открыт один канал.");
+                    listenerCount = 1;
+                }
+            } catch (IOException e) {
+                listenerCount = 1;
+            }
+        }
+
         try {
-            channel = DatagramChannel.open();
-            channel.bind(new InetSocketAddress(port));
-            channel.configureBlocking(false);
-            selector = Selector.open();
-            channel.register(selector, SelectionKey.OP_READ);
-            printer.println("Сервер запущен на порту: " + port);
+            for (int i = 0; i < listenerCount; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                if (listenerCount > 1) channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.bind(new InetSocketAddress(port));
+                channel.configureBlocking(false);
+                Selector selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_READ);
+                listeners.add(new Listener(channel, selector));
+            }
+            printer.println("Сервер запущен на порту: " + port + (listeners.size() > 1 ? " (каналов: " + listeners.size() + ")" : ""));
         } catch (IOException e) {
             printer.printError("Ошибка при инициализации канала: " + e.getMessage());
         }
@@ -103,7 +325,10 @@ public class ConnectionControl {
      */
     public boolean isReady() {
         try {
-            return selector.selectNow() > 0;
+            for (Listener listener : listeners) {
+                if (listener.selector.selectNow() > 0) return true;
+            }
+            return false;
         } catch (IOException e) {
             printer.printError("Ошибка при проверке доступности данных: " + e.getMessage());
             return false;
@@ -111,88 +336,35 @@ public class ConnectionControl {
     }
 
     /**
-     * Читает данные из канала.
+     * Запускает приём запросов. Каждый канал, кроме первого, обслуживается отдельным потоком,
+     * а первый канал обслуживается вызывающим потоком до закрытия канала.
      *
-     * @return Принятый {@link ServerRequest}, или null, если данных нет.
+     * @param handler Обработчик принятых {@link ServerRequest}.
      */
-    public ServerRequest read() {
-        try {
-            int readyChannels = selector.selectNow();
-            if (readyChannels == 0) return null;
+    public void listen(Consumer<ServerRequest> handler) {
+        this.handler = handler;
+        startTcp();
+        if (listeners.isEmpty()) return;
+        for (int i = 0; i < listeners.size(); i++) {
+            if (i > 0) new Thread(listeners.get(i), "udp-listener-" + i).start();
+        }
+        listeners.get(0).run();
+    }
 
-            for (SelectionKey key : selector.selectedKeys()) {
-                if (key.isReadable()) {
-                    buffer.clear();
-                    InetSocketAddress clientAddress = (InetSocketAddress) channel.receive(buffer);
-                    if (clientAddress != null) {
-                        buffer.flip();
-                        byte[] data = new byte[buffer.limit()];
-                        buffer.get(data);
-
-                        
-                        int clientId = connectedUsers.indexOf(clientAddress);
-                        if (clientId == -1) {
-                            connectedUsers.add(clientAddress);
-                            clientId = connectedUsers.size() - 1;
-                        }
-                        else {
-                            connectedUsers.set(clientId, clientAddress);
-                        }
-                        
-
-                        ServerRequest request = deserializeRequest(data);
-                        if (request != null) {
-                            // auth handler
-                            if (!request.getContent().equals("log_in")) {
-                                boolean auth;
-                                try {
-                                    auth = dataBaseControl.authenticateUser(request.getUser().getName(), request.getUser().getPassword());
-                                }
-                                catch (Exception e) {
-                                    printer.printError("Ошибка при аутентификации пользователя: " + e.getMessage());
-                                    sendResponse(new ServerResponse(request.getClientCommandId(), ResponseType.AUTH_FAILURE, PrintType.ERROR, new StringWrapper("Ошибка при аутентификации"), clientId));
-                                    return null;
-                                }
-                                if (!auth) {
-                                    sendResponse(new ServerResponse(request.getClientCommandId(), ResponseType.AUTH_FAILURE, PrintType.ERROR, new StringWrapper("Неверный логин или пароль"), clientId));
-                                    return null;
-                                }
-                            }
-
-                            // command handler
-                            request.setClientId(clientId);
-
-                            printer.println("Получена команда " + request.getContent() + " от клиента " + clientId);
-
-                            selector.selectedKeys().clear();
-                            return request;
-                        }
-                        else {
-                            String received = new String(data);
-                            if (received.equals("echo")) {
-                                printer.println("Получено echo от клиента " + clientId);
-                                buffer.clear();
-                                buffer.put("OK".getBytes());
-                                buffer.flip();
-                                channel.send(buffer, clientAddress);
-                            }
-                            else {
-                                buffer.clear();
-                                buffer.put("NO".getBytes());
-                                buffer.flip();
-                                channel.send(buffer, clientAddress);
-                            }
-                            selector.selectedKeys().clear();
-                            return null;
-                        }
-                    } else {selector.selectedKeys().clear(); return null; }
-                }
-            }
-            selector.selectedKeys().clear();
+    /**
+     * Открывает порт TCP, если он задан параметром {@code tcp_port}, и запускает потоки приёма соединений.
+     * Вызывается после создания объекта, потому что потоки TCP сразу начинают передавать ему кадры.
+     */
+    private void startTcp() {
+        int tcpPort = Environment.getInt("tcp_port", 0);
+        if (tcpPort <= 0) return;
+        try {
+            tcp = new TcpControl(tcpPort, Environment.getInt("tcp_selectors", 2), Environment.getLong("tcp_max_pending", 64L << 20), sessions, this::receiveFrame, printer);
+            tcp.start();
+            printer.println("Приём соединений TCP на порту: " + tcpPort);
         } catch (IOException e) {
-            printer.printError("Ошибка при чтении данных: " + e.getMessage());
+            printer.printError("Ошибка при открытии TCP-порта: " + e.getMessage());
         }
-        return null; // Если данных нет
     }
 
     /**
@@ -202,28 +374,174 @@ public class ConnectionControl {
      */
     public void sendResponse(ServerResponse response) {
 
-            int clientId = response.getClientId();
-            if (clientId >= 0 && clientId < connectedUsers.size()) {
-                InetSocketAddress clientAddress = connectedUsers.get(clientId);
-                builder.start(() -> new Sender(response, clientAddress, channel, printer).compute());                
+            Session session = sessions.get(response.getClientId());
+            if (session != null) {
+                builder.start(() -> new Sender(response, session, messageIds.incrementAndGet()).compute());                
             }
+            else deduplication.forget(response.getClientId(), response.getClientCommandId());
+    }
+
+    /**
+     * Сообщает, что ответа на запрос не будет, например потому что команда завершилась ошибкой.
+     * Повтор такого запроса клиентом выполняется заново, а не отбрасывается как уже выполняемый.
+     *
+     * @param request Запрос, переданный обработчику.
+     */
+    public void abandon(ServerRequest request) {
+        deduplication.forget(request.getClientId(), request.getClientCommandId());
     }
 
     /**
      * Закрывает сетевой канал.
      */
     public void close() {
-        try {
-            if (channel != null && channel.isOpen()) {
-                channel.close();
+        sessions.close();
+        reliability.close();
+        if (tcp != null) tcp.close();
+        for (Listener listener : listeners) {
+            try {
+                if (listener.channel.isOpen()) {
+                    listener.channel.close();
+                }
+                if (listener.selector.isOpen()) {
+                    listener.selector.close();
+                }
+            } catch (IOException e) {
+                printer.printError("Ошибка при закрытии канала: " + e.getMessage());
             }
-        } catch (IOException e) {
-            printer.printError("Ошибка при закрытии канала: " + e.getMessage());
         }
     }
 
     
 
+    /**
+     * Декодирует запрос в бинарном формате или в формате сериализации Java
+     * и запоминает в сессии формат и флаги клиента.
+     *
+     * @param session Сессия клиента.
+     * @param message Буфер с сообщением.
+     * @return Декодированный {@link ServerRequest}, или null, если сообщение не является запросом.
+     */
+    private ServerRequest decode(Session session, ByteBuffer message) {
+        ServerRequest request;
+        if (WireCodec.isBinary(message)) {
+            byte flags = WireCodec.peekFlags(message);
+            request = decodeRequest(message);
+            if (request != null) {
+                session.setBinary(true);
+                session.setAcceptsDeflate((flags & WireCodec.FLAG_ACCEPT_DEFLATE) != 0);
+                // Поверх TCP подтверждения не нужны
+                reliability.configure(session, session.getConnection() == null && (flags & WireCodec.FLAG_RELIABLE) != 0);
+            }
+        }
+        else {
+            byte[] data = new byte[message.remaining()];
+            message.get(data);
+            request = deserializeRequest(data);
+            if (request != null) {
+                session.setBinary(false);
+                reliability.configure(session, false);
+            }
+        }
+        return request;
+    }
+
+    /**
+     * Пропускает декодированный запрос через общие для всех транспортов проверки:
+     * повтор запроса, лимит пользователя и аутентификацию.
+     *
+     * @param session Сессия клиента.
+     * @param request Декодированный запрос.
+     * @return Запрос, готовый к выполнению, или null, если выполнять его не нужно.
+     */
+    private ServerRequest admit(Session session, ServerRequest request) {
+        int clientId = session.getId();
+
+        // duplicate handler
+        DeduplicationControl.Entry duplicate = deduplication.begin(clientId, request.getClientCommandId(), request.getContent());
+        if (duplicate != null) {
+            byte[] response = duplicate.getResponse();
+            if (response != null) builder.start(() -> new Sender(response, session, messageIds.incrementAndGet()).compute());
+            return null;
+        }
+
+        // token handler
+        if (request.getToken() != null) {
+            String userName = AuthControl.verifyToken(request.getToken());
+            if (userName == null) {
+                sendResponse(new ServerResponse(request.getClientCommandId(), ResponseType.AUTH_FAILURE, PrintType.ERROR, new StringWrapper("Токен недействителен или истёк, выполните вход заново"), clientId));
+                return null;
+            }
+            request.setUser(new UserWrapper(userName, null));
+        }
+
+        if (!rateLimits.allowUser(request.getUser() == null ? null : request.getUser().getName())) {
+            deduplication.forget(clientId, request.getClientCommandId());
+            return null;
+        }
+
+        // auth handler
+        if (request.getToken() == null && !request.getContent().split("\\s+")[0].equals("log_in")) {
+            boolean auth;
+            try {
+                auth = dataBaseControl.authenticateUser(request.getUser().getName(), request.getUser().getPassword());
+            }
+            catch (Exception e) {
+                printer.printError("Ошибка при аутентификации пользователя: " + e.getMessage());
+                sendResponse(new ServerResponse(request.getClientCommandId(), ResponseType.AUTH_FAILURE, PrintType.ERROR, new StringWrapper("Ошибка при аутентификации"), clientId));
+                return null;
+            }
+            if (!auth) {
+                sendResponse(new ServerResponse(request.getClientCommandId(), ResponseType.AUTH_FAILURE, PrintType.ERROR, new StringWrapper("Неверный логин или пароль"), clientId));
+                return null;
+            }
+        }
+
+        // command handler
+        request.setClientId(clientId);
+
+        printer.println("Получена команда " + request.getContent() + " от клиента " + clientId);
+        return request;
+    }
+
+    /**
+     * Обрабатывает кадр, принятый по TCP.
+     *
+     * @param session Сессия соединения.
+     * @param frame   Буфер с содержимым кадра.
+     */
+    private void receiveFrame(Session session, ByteBuffer frame) {
+        if (!rateLimits.allowSession(session)) return;
+        ServerRequest request = decode(session, frame);
+        if (request != null) authorize(session, request);
+    }
+
+    /**
+     * Ставит декодированный запрос в очередь этапа аутентификации. Запросы, прошедшие проверки,
+     * передаются обработчику, то есть этапу выполнения команд. Если очередь заполнена,
+     * клиенту сразу отправляется {@link ResponseType#BUSY}.
+     *
+     * @param session Сессия клиента.
+     * @param request Декодированный запрос.
+     */
+    private void authorize(Session session, ServerRequest request) {
+        boolean accepted = authStage.submit(() -> {
+            try {
+                ServerRequest admitted = admit(session, request);
+                if (admitted != null) handler.accept(admitted);
+            } catch (RuntimeException e) {
+                printer.printError("Ошибка при обработке запроса: " + e);
+                deduplication.forget(session.getId(), request.getClientCommandId());
+            }
+        });
+        if (!accepted) {
+            // Запрос не дошёл до кэша повторов: отказ не должен трогать запись более ранней копии,
+            // которая, возможно, ещё выполняется
+            ServerResponse busy = new ServerResponse(request.getClientCommandId(), ResponseType.BUSY, PrintType.ERROR, new StringWrapper("Сервер перегружен, повторите запрос позже"), session.getId());
+            builder.start(() -> new Sender(busy, session, messageIds.incrementAndGet(), false).compute());
+        }
+    }
+
     private ServerRequest deserializeRequest(byte[] data) {
         try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
              ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream)) {
@@ -235,4 +553,13 @@ public class ConnectionControl {
             return null;
         }
     }
+
+    private ServerRequest decodeRequest(ByteBuffer message) {
+        try {
+            return WireCodec.decodeRequest(message);
+        } catch (ProtocolException e) {
+            printer.printError("Ошибка при декодировании запроса: " + e.getMessage());
+            return null;
+        }
+    }
 }
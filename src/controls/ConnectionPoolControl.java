@@ -0,0 +1,380 @@
+package controls;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import consoles.Printer;
+
+/**
+ * Пул соединений с базой данных.
+ * <p>
+ * Соединение выдаётся как обёртка, метод {@code close()} которой возвращает соединение в пул.
+ * Число соединений ограничено сверху; если все заняты, поток ждёт освобождения не дольше заданного
+ * времени. Соединение, простоявшее без дела дольше времени валидации, проверяется перед выдачей.
+ * Фоновый поток закрывает лишние простаивающие соединения, поддерживает минимальное число открытых
+ * и сообщает о соединениях, которые взяли и долго не возвращают.
+ */
+public class ConnectionPoolControl {
+    /**
+     * Источник новых соединений.
+     */
+    @FunctionalInterface
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    private static class Pooled {
+        private final Connection connection;
+        private long lastUsed = System.currentTimeMillis();
+
+        Pooled(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private static class Lease {
+        private final Pooled pooled;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final Throwable origin; // Место, где взято соединение; null, если утечки не отслеживаются
+        private boolean reported;
+        private volatile boolean returned;
+
+        Lease(Pooled pooled, Throwable origin) {
+            this.pooled = pooled;
+            this.origin = origin;
+        }
+    }
+
+    private static final long VALIDATION_INTERVAL_MILLIS = 5_000;
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long waitTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final Printer printer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Pooled> idle = new ArrayDeque<>(); // Последнее возвращённое соединение выдаётся первым
+    private int total; // Открытые соединения, включая выданные и создаваемые
+    private final Map<Connection, Lease> leases = new ConcurrentHashMap<>();
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final LongAdder borrows = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final ScheduledExecutorService maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "db-pool-maintainer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param factory             Источник новых соединений.
+     * @param minSize             Число соединений, которые пул держит открытыми.
+     * @param maxSize             Максимальное число открытых соединений.
+     * @param idleTimeoutMillis   Время простоя, после которого лишнее соединение закрывается.
+     * @param waitTimeoutMillis   Максимальное время ожидания свободного соединения.
+     * @param leakThresholdMillis Время, после которого не возвращённое соединение считается утечкой;
+     *                            0 или меньше отключает отслеживание утечек.
+     */
+    public ConnectionPoolControl(ConnectionFactory factory, int minSize, int maxSize, long idleTimeoutMillis,
+                                 long waitTimeoutMillis, long leakThresholdMillis, Printer printer) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.printer = printer;
+    }
+
+    /**
+     * Регистрирует статистику пула и запускает фоновый поток, который открывает минимальное
+     * число соединений, закрывает лишние и сообщает об утечках.
+     */
+    public void start() {
+        StatsControl.register("db.pool.total", this::getTotal);
+        StatsControl.register("db.pool.idle", this::getIdle);
+        StatsControl.register("db.pool.active", leases::size);
+        StatsControl.register("db.pool.created", created::get);
+        StatsControl.register("db.pool.wait_us_avg", () -> borrows.sum() == 0 ? 0 : waitNanos.sum() / borrows.sum() / 1000);
+        StatsControl.register("db.pool.wait_timeouts", waitTimeouts::get);
+        StatsControl.register("db.pool.validation_failures", validationFailures::get);
+        StatsControl.register("db.pool.leaks", leaks::get);
+
+        long period = Math.max(1_000, (leakThresholdMillis > 0 ? Math.min(idleTimeoutMillis, leakThresholdMillis) : idleTimeoutMillis) / 2);
+        maintainer.execute(this::fill);
+        maintainer.scheduleWithFixedDelay(this::maintain, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Выдаёт соединение из пула. Соединение нужно закрыть, чтобы вернуть его в пул.
+     *
+     * @return Соединение.
+     * @throws SQLException Если соединение не удалось открыть или дождаться.
+     */
+    public Connection borrow() throws SQLException {
+        long startedAt = System.nanoTime();
+        long deadline = startedAt + TimeUnit.MILLISECONDS.toNanos(waitTimeoutMillis);
+        while (true) {
+            Pooled pooled = null;
+            boolean create = false;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Пул соединений закрыт");
+                    pooled = idle.pollFirst();
+                    if (pooled != null) break;
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        waitTimeouts.incrementAndGet();
+                        throw new SQLException("Нет свободных соединений с базой данных (ожидание " + waitTimeoutMillis + " мс)");
+                    }
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Ожидание соединения прервано");
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    pooled = new Pooled(factory.create());
+                    created.incrementAndGet();
+                } catch (SQLException | RuntimeException e) {
+                    discard(null);
+                    throw e;
+                }
+            }
+            else if (!validate(pooled)) {
+                validationFailures.incrementAndGet();
+                discard(pooled);
+                continue;
+            }
+
+            borrows.increment();
+            waitNanos.add(System.nanoTime() - startedAt);
+            return wrap(pooled);
+        }
+    }
+
+    /**
+     * Закрывает пул и все простаивающие соединения. Выданные соединения закрываются при возврате.
+     */
+    public void close() {
+        maintainer.shutdownNow();
+        lock.lock();
+        try {
+            closed = true;
+            for (Pooled pooled : idle) closeQuietly(pooled.connection);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTotal() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private boolean validate(Pooled pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_INTERVAL_MILLIS) return true;
+        try {
+            return pooled.connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Оборачивает соединение так, чтобы {@code close()} возвращал его в пул, а обращения
+     * к уже возвращённому соединению завершались ошибкой.
+     */
+    private Connection wrap(Pooled pooled) {
+        // Стек вызова собирается только при включённом отслеживании утечек: это самая дорогая часть выдачи
+        Lease lease = new Lease(pooled, leakThresholdMillis > 0 ? new Throwable("Соединение взято здесь") : null);
+        Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+            (self, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (!lease.returned) {
+                            lease.returned = true;
+                            leases.remove((Connection) self);
+                            release(pooled);
+                        }
+                        return null;
+                    case "isClosed":
+                        return lease.returned || pooled.connection.isClosed();
+                    case "equals":
+                        return self == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(self);
+                    case "toString":
+                        return "Pooled" + pooled.connection;
+                }
+                if (lease.returned) throw new SQLException("Соединение уже возвращено в пул");
+                try {
+                    return method.invoke(pooled.connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        leases.put(proxy, lease);
+        return proxy;
+    }
+
+    /**
+     * Возвращает соединение в пул. Незавершённая транзакция откатывается, настройки сбрасываются;
+     * соединение, которое не удалось привести в исходное состояние, закрывается.
+     */
+    private void release(Pooled pooled) {
+        try {
+            if (pooled.connection.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            if (!pooled.connection.getAutoCommit()) {
+                pooled.connection.rollback();
+                pooled.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(pooled);
+            return;
+        }
+
+        pooled.lastUsed = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (closed) {
+                total--;
+                closeQuietly(pooled.connection);
+                return;
+            }
+            idle.addFirst(pooled);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает соединение и освобождает его место в пуле.
+     *
+     * @param pooled Соединение, или null, если его не удалось создать.
+     */
+    private void discard(Pooled pooled) {
+        if (pooled != null) closeQuietly(pooled.connection);
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Открывает соединения, пока их не станет не меньше минимального числа.
+     */
+    private void fill() {
+        while (true) {
+            lock.lock();
+            try {
+                if (closed || total >= minSize) return;
+                total++;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                Pooled pooled = new Pooled(factory.create());
+                created.incrementAndGet();
+                release(pooled);
+            } catch (SQLException | RuntimeException e) {
+                discard(null);
+                return;
+            }
+        }
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            // Самые давно не использованные соединения находятся в конце очереди
+            while (total > minSize && !idle.isEmpty() && now - idle.peekLast().lastUsed > idleTimeoutMillis) {
+                closeQuietly(idle.pollLast().connection);
+                total--;
+            }
+        } finally {
+            lock.unlock();
+        }
+        fill();
+
+        if (leakThresholdMillis <= 0) return;
+        for (Lease lease : leases.values()) {
+            if (!lease.reported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.reported = true;
+                leaks.incrementAndGet();
+                String site = "неизвестно";
+                for (StackTraceElement frame : lease.origin.getStackTrace()) {
+                    if (!frame.getClassName().startsWith(ConnectionPoolControl.class.getName()) && !frame.getMethodName().equals("getConnection")) {
+                        site = frame.toString();
+                        break;
+                    }
+                }
+                printer.printWarning("Соединение с базой данных не возвращено в пул дольше " + leakThresholdMillis + " мс, взято в " + site);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {}
+    }
+}
@@ -2,7 +2,16 @@ package controls;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import consoles.Printer;
 import models.Coordinates;
@@ -10,55 +19,124 @@ import models.Flat;
 import models.House;
 import models.Transport;
 import models.View;
+import util.Environment;
 
 public class DataBaseControl {
+    /**
+     * Запись справочника пользователей.
+     */
+    private static class UserRecord {
+        private final int id;
+        private final String passwordHash;
+
+        UserRecord(int id, String passwordHash) {
+            this.id = id;
+            this.passwordHash = passwordHash;
+        }
+    }
+
+    /**
+     * Квартира, разобранная из строки результата, и id её владельца.
+     */
+    private static class LoadedFlat {
+        private final Flat flat;
+        private final Integer owner;
+
+        LoadedFlat(Flat flat, Integer owner) {
+            this.flat = flat;
+            this.owner = owner;
+        }
+    }
+
     private final String URL = "jdbc:postgresql://localhost:5433/studs";
     private final String my_login = "s466972";
     private final String my_password = "uHlEzwXD9phENmHf";
     private Printer printer;
+    // Справочник пользователей: имя -> (id, хеш пароля). Загружается при запуске и пополняется при регистрации
+    private final Map<String, UserRecord> users = new ConcurrentHashMap<>();
+    private volatile boolean usersLoaded; // Справочник загружен, и отсутствие в нём имени означает, что пользователя нет
+
+    private static final int LOAD_COLUMNS = 15; // Число столбцов в запросе загрузки коллекции
+
+    // Общие части запросов добавления и изменения квартиры; параметры заполняют bindInsert и bindUpdate
+    private static final String INSERT_FLAT_SQL = "WITH c AS (INSERT INTO Coordinates (x, y) VALUES (?, ?) RETURNING id), " +
+            "h AS (INSERT INTO Houses (name, year, number_of_floors, number_of_flats_on_floor) VALUES (?, ?, ?, ?) RETURNING id) " +
+            "INSERT INTO Flats (name, coordinates_id, creation_date, area, number_of_rooms, time_to_metro_by_transport, view, transport, house_id, created_by_user";
+    private static final String UPDATE_FLAT_SQL = "WITH f AS (UPDATE Flats SET name=?, creation_date=?, area=?, number_of_rooms=?, time_to_metro_by_transport=?, " +
+            "view=?::View, transport=?::Transport WHERE id=? AND created_by_user=? RETURNING coordinates_id, house_id), " +
+            "c AS (UPDATE Coordinates SET x=?, y=? FROM f WHERE Coordinates.id = f.coordinates_id)";
+    private static final String UPDATE_HOUSE_SQL = "UPDATE Houses SET name=?, year=?, number_of_floors=?, number_of_flats_on_floor=? FROM f WHERE Houses.id = f.house_id";
+    private final ConnectionPoolControl pool; // Пул соединений, через который выполняются все запросы
 
     public DataBaseControl(Printer printer) {
         this.printer = printer;
+        pool = new ConnectionPoolControl(() -> DriverManager.getConnection(URL, my_login, my_password),
+                Environment.getInt("db_pool_min", 2), Environment.getInt("db_pool_max", 16),
+                Environment.getLong("db_pool_idle_ms", 60_000), Environment.getLong("db_pool_wait_ms", 5_000),
+                Environment.getLong("db_pool_leak_ms", 30_000), printer);
+        pool.start();
     }
 
-    private Connection getConnection() throws SQLException {
-        try {
-            return DriverManager.getConnection(URL, my_login, my_password);
-        } catch (SQLException e) {
-            printer.printError("Ошибка подключения к базе данных: " + e.getMessage());
-            throw e;
+    /**
+     * Загружает справочник пользователей, чтобы проверка пароля и поиск id по имени
+     * не требовали обращения к базе данных.
+     */
+    public void loadUsers() throws SQLException {
+        String sql = "SELECT id, user_name, password_hash FROM Users";
+        try (Connection conn = this.getConnection();
+            Statement st = conn.createStatement();
+            ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                users.put(rs.getString("user_name"), new UserRecord(rs.getInt("id"), rs.getString("password_hash")));
+            }
+            usersLoaded = true;
+            printer.println("Загружено пользователей: " + users.size());
         }
     }
 
+    /**
+     * Возвращает запись пользователя из справочника. После загрузки справочника имя, которого
+     * в нём нет, считается незарегистрированным без обращения к базе, поэтому запросы с
+     * несуществующими именами не нагружают базу. Если справочник загрузить не удалось,
+     * запись читается из базы и сохраняется.
+     */
+    private UserRecord findUser(String username) throws SQLException {
+        if (username == null) return null;
+        UserRecord user = users.get(username);
+        if (user != null || usersLoaded) return user;
 
-    public boolean authenticateUser(String username, String password) throws SQLException {
-        String sql = "SELECT password_hash FROM Users WHERE user_name = ?";
+        String sql = "SELECT id, password_hash FROM Users WHERE user_name = ?";
         try (Connection conn = this.getConnection();
             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    String storedHash = rs.getString("password_hash");
-                    return PasswordControl.verifyPassword(password, storedHash, username);
+                    user = new UserRecord(rs.getInt("id"), rs.getString("password_hash"));
+                    users.put(username, user);
                 }
-                return false;
+                return user;
             }
         }
     }
 
-    public boolean userExists(String username) throws SQLException {
-        String sql = "SELECT password_hash FROM Users WHERE user_name = ?";
-        try (Connection conn = this.getConnection();
-            PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, username);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return true;
-                }
-                return false;
-            }
+    private Connection getConnection() throws SQLException {
+        try {
+            return pool.borrow();
+        } catch (SQLException e) {
+            printer.printError("Ошибка подключения к базе данных: " + e.getMessage());
+            throw e;
         }
     }
+
+
+    public boolean authenticateUser(String username, String password) throws SQLException {
+        UserRecord user = findUser(username);
+        return user != null && password != null && PasswordControl.verifyPassword(password, user.passwordHash, username);
+    }
+
+    public boolean userExists(String username) throws SQLException {
+        return findUser(username) != null;
+    }
     /*  
      * finish password control
      * enum types
@@ -67,65 +145,17 @@ public class DataBaseControl {
      */
 
     public Long insertFlat(Flat flat, int userId) throws SQLException {
-        String coordinatesSql = "INSERT INTO Coordinates (x, y) VALUES (?, ?) RETURNING id";
-        String houseSql = "INSERT INTO Houses (name, year, number_of_floors, number_of_flats_on_floor) VALUES (?, ?, ?, ?) RETURNING id";
-        String sql = "INSERT INTO Flats (name, coordinates_id, creation_date, area, number_of_rooms, time_to_metro_by_transport, view, transport, house_id, created_by_user) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?::View, ?::Transport, ?, ?) RETURNING id";
-        try (Connection conn = this.getConnection()) {
-            
-            conn.setAutoCommit(false);
-            // Insert Coordinates
-            int coordId;
-            try (PreparedStatement coordStmt = conn.prepareStatement(coordinatesSql)) {
-                coordStmt.setFloat(1, flat.getCoordinates().getX());
-                coordStmt.setDouble(2, flat.getCoordinates().getY());
-                try (ResultSet coordRs = coordStmt.executeQuery()) {
-                    if (coordRs.next()) {
-                        coordId = coordRs.getInt("id");
-                    } else {
-                        throw new SQLException("Не удалось создать запись в таблице Coordinates.");
-                    }
-                }
-            }
-
-            // Insert House
-            int houseId;
-            try (PreparedStatement houseStmt = conn.prepareStatement(houseSql)) {
-                House house = flat.getHouse();
-                houseStmt.setString(1, house.getName());
-                houseStmt.setInt(2, house.getYear());
-                houseStmt.setLong(3, house.getNumberOfFloors());
-                houseStmt.setLong(4, house.getNumberOfFlatsOnFloor());
-                try (ResultSet houseRs = houseStmt.executeQuery()) {
-                    if (houseRs.next()) {
-                        houseId = houseRs.getInt("id");
-                    } else {
-                        throw new SQLException("Не удалось создать запись в таблице Houses.");
-                    }
-                }
-            }
-
-            // Insert Flat
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, flat.getName());
-                stmt.setInt(2, coordId);
-                stmt.setDate(3, Date.valueOf(flat.getCreationDate()));
-                stmt.setFloat(4, flat.getArea());
-                stmt.setLong(5, flat.getNumberOfRooms());
-                stmt.setFloat(6, flat.getTimeToMetroByTransport());
-                stmt.setString(7, flat.getView().name());
-                stmt.setString(8, flat.getTransport().name());
-                stmt.setInt(9, houseId);
-                stmt.setInt(10, userId);
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (rs.next()) {
-                        return rs.getLong("id");
-                    }
+        // Координаты, дом и квартира вставляются одним запросом: один обмен с сервером,
+        // а одиночный запрос в режиме autocommit выполняется и фиксируется как одна транзакция
+        String sql = INSERT_FLAT_SQL + ") SELECT ?, c.id, ?, ?, ?, ?, ?::View, ?::Transport, h.id, ? FROM c, h RETURNING id";
+        try (Connection conn = this.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindInsert(stmt, flat, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getLong("id");
                 }
             }
-
-            // Commit transaction
-            conn.commit();
         } catch (SQLException e) {
             printer.printError("Ошибка при добавлении квартиры: " + e.getMessage());
             throw e;
@@ -134,82 +164,56 @@ public class DataBaseControl {
     }
 
     public boolean modifyFlat(long flatId, Flat flat, int userId) throws SQLException {
-        // Check access
-        if (!hasAccess((int) flatId, userId)) {
-            printer.printError("Нет доступа для изменения этой квартиры.");
-            return false;
-        }
-
-        // Insert new Coordinates
-        String coordinatesSql = "INSERT INTO Coordinates (x, y) VALUES (?, ?) RETURNING id";
-        int coordId;
-        try (Connection conn = this.getConnection();
-             PreparedStatement coordStmt = conn.prepareStatement(coordinatesSql)) {
-            coordStmt.setFloat(1, flat.getCoordinates().getX());
-            coordStmt.setDouble(2, flat.getCoordinates().getY());
-            try (ResultSet coordRs = coordStmt.executeQuery()) {
-                if (coordRs.next()) {
-                    coordId = coordRs.getInt("id");
-                } else {
-                    throw new SQLException("Не удалось создать запись в таблице Coordinates.");
-                }
-            }
-        }
-
-        // Insert new House
-        String houseSql = "INSERT INTO Houses (name, year, number_of_floors, number_of_flats_on_floor) VALUES (?, ?, ?, ?) RETURNING id";
-        int houseId;
+        // Права доступа проверяет CollectionControl; условие created_by_user в UPDATE остаётся последней проверкой.
+        // Строки Coordinates и Houses квартиры обновляются на месте тем же запросом, поэтому изменение
+        // выполняется за один обмен с сервером, одной транзакцией и не оставляет лишних строк
+        String sql = UPDATE_FLAT_SQL + ", h AS (" + UPDATE_HOUSE_SQL + ") SELECT count(*) AS updated FROM f";
         try (Connection conn = this.getConnection();
-             PreparedStatement houseStmt = conn.prepareStatement(houseSql)) {
-            House house = flat.getHouse();
-            houseStmt.setString(1, house.getName());
-            houseStmt.setInt(2, house.getYear());
-            houseStmt.setLong(3, house.getNumberOfFloors());
-            houseStmt.setLong(4, house.getNumberOfFlatsOnFloor());
-            try (ResultSet houseRs = houseStmt.executeQuery()) {
-                if (houseRs.next()) {
-                    houseId = houseRs.getInt("id");
-                } else {
-                    throw new SQLException("Не удалось создать запись в таблице Houses.");
-                }
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bindUpdate(stmt, flatId, flat, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt("updated") > 0;
             }
         }
+    }
 
-        // Update Flat
-        String sql = "UPDATE Flats SET name=?, coordinates_id=?, creation_date=?, area=?, number_of_rooms=?, time_to_metro_by_transport=?, view=?::View, transport=?::Transport, house_id=? WHERE id=? AND created_by_user=?";
+    public boolean removeFlat(long flatId, int userId) throws SQLException {
+        // Права доступа проверяет CollectionControl; условие created_by_user в DELETE остаётся последней проверкой
+        String sql = "DELETE FROM Flats WHERE id = ? AND created_by_user = ?";
         try (Connection conn = this.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, flat.getName());
-            stmt.setInt(2, coordId);
-            stmt.setDate(3, Date.valueOf(flat.getCreationDate()));
-            stmt.setFloat(4, flat.getArea());
-            stmt.setLong(5, flat.getNumberOfRooms());
-            stmt.setFloat(6, flat.getTimeToMetroByTransport());
-            stmt.setString(7, flat.getView().name());
-            stmt.setString(8, flat.getTransport().name());
-            stmt.setInt(9, houseId);
-            stmt.setLong(10, flatId);
-            stmt.setInt(11, userId);
+            stmt.setLong(1, flatId);
+            stmt.setInt(2, userId);
             int affectedRows = stmt.executeUpdate();
             return affectedRows > 0;
         }
     }
 
-    public boolean removeFlat(long flatId, int userId) throws SQLException {
-        // Check access
-        if (!hasAccess((int) flatId, userId)) {
-            printer.printError("Нет доступа для удаления этой квартиры.");
-            return false;
-        }
+    /**
+     * Удаляет квартиры пользователя одним запросом.
+     *
+     * @param flatIds Id квартир.
+     * @param userId  Id пользователя; квартиры других пользователей не удаляются.
+     * @return Id удалённых квартир.
+     */
+    public List<Long> removeFlats(Collection<Long> flatIds, int userId) throws SQLException {
+        List<Long> removed = new ArrayList<>();
+        if (flatIds.isEmpty()) return removed;
 
-        String sql = "DELETE FROM Flats WHERE id = ? AND created_by_user = ?";
+        String sql = "DELETE FROM Flats WHERE id = ANY(?) AND created_by_user = ? RETURNING id";
         try (Connection conn = this.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setLong(1, flatId);
+            Array ids = conn.createArrayOf("bigint", flatIds.toArray());
+            stmt.setArray(1, ids);
             stmt.setInt(2, userId);
-            int affectedRows = stmt.executeUpdate();
-            return affectedRows > 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    removed.add(rs.getLong("id"));
+                }
+            }
+            ids.free();
         }
+        return removed;
     }
 
     public boolean registerUser(String username, String password) throws SQLException {
@@ -219,13 +223,17 @@ public class DataBaseControl {
             return false;
         }
 
-        String sql = "INSERT INTO Users (user_name, password_hash) VALUES (?, ?)";
+        // Имя может быть занято пользователем, которого другой процесс добавил после загрузки справочника
+        String sql = "INSERT INTO Users (user_name, password_hash) VALUES (?, ?) ON CONFLICT (user_name) DO NOTHING RETURNING id";
         try (Connection conn = this.getConnection();
             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, username);
             stmt.setString(2, hashed);
-            stmt.executeUpdate();
-            return true;
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) return false;
+                users.put(username, new UserRecord(rs.getInt("id"), hashed));
+                return true;
+            }
         }
     }
 
@@ -249,55 +257,283 @@ public class DataBaseControl {
     }
 
     public Integer getUserIdFromUsername(String username) throws SQLException {
-        String sql = "SELECT id FROM Users WHERE user_name = ?";
+        UserRecord user = findUser(username);
+        return user == null ? null : user.id;
+    }
+
+    /**
+     * Возвращает номер последней записи журнала отложенной записи, применённой к базе.
+     */
+    public long getJournalCheckpoint() throws SQLException {
         try (Connection conn = this.getConnection();
-            PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, username);
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT applied_sequence FROM journal_checkpoint WHERE id = 1")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public void setJournalCheckpoint(long sequence) throws SQLException {
+        try (Connection conn = this.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE journal_checkpoint SET applied_sequence = ? WHERE id = 1")) {
+            stmt.setLong(1, sequence);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Резервирует id для новых квартир в последовательности таблицы Flats.
+     *
+     * @param count Число id.
+     * @return Зарезервированные id.
+     */
+    public long[] reserveFlatIds(int count) throws SQLException {
+        long[] ids = new long[count];
+        try (Connection conn = this.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT nextval(pg_get_serial_sequence('flats', 'id')) FROM generate_series(1, ?)")) {
+            stmt.setInt(1, count);
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("id");
+                int i = 0;
+                while (rs.next() && i < count) ids[i++] = rs.getLong(1);
+                if (i < count) throw new SQLException("Зарезервировано " + i + " id вместо " + count);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Применяет записи журнала отложенной записи одной транзакцией и запоминает номер последней из них.
+     * Подряд идущие записи одного типа отправляются одним пакетом JDBC.
+     *
+     * @param entries Записи в порядке номеров.
+     */
+    void applyJournal(List<JournalControl.Entry> entries) throws SQLException {
+        try (Connection conn = this.getConnection();
+             PreparedStatement insert = conn.prepareStatement(INSERT_FLAT_SQL + ", id) SELECT ?, c.id, ?, ?, ?, ?, ?::View, ?::Transport, h.id, ?, ? FROM c, h");
+             PreparedStatement update = conn.prepareStatement(UPDATE_FLAT_SQL + " " + UPDATE_HOUSE_SQL);
+             PreparedStatement remove = conn.prepareStatement("DELETE FROM Flats WHERE id = ANY(?) AND created_by_user = ?");
+             PreparedStatement checkpoint = conn.prepareStatement("UPDATE journal_checkpoint SET applied_sequence = ? WHERE id = 1")) {
+            conn.setAutoCommit(false);
+            PreparedStatement batch = null;
+            for (JournalControl.Entry entry : entries) {
+                PreparedStatement stmt = entry.type == JournalControl.ADD ? insert : entry.type == JournalControl.UPDATE ? update : remove;
+                if (batch != null && batch != stmt) batch.executeBatch();
+                batch = stmt;
+                if (entry.type == JournalControl.ADD) {
+                    bindInsert(insert, entry.flat, entry.userId);
+                    insert.setLong(15, entry.flat.getId());
+                }
+                else if (entry.type == JournalControl.UPDATE) {
+                    bindUpdate(update, entry.flat.getId(), entry.flat, entry.userId);
+                }
+                else {
+                    remove.setArray(1, conn.createArrayOf("bigint", entry.ids.toArray()));
+                    remove.setInt(2, entry.userId);
                 }
+                stmt.addBatch();
             }
+            if (batch != null) batch.executeBatch();
+            checkpoint.setLong(1, entries.get(entries.size() - 1).getSequence());
+            checkpoint.executeUpdate();
+            conn.commit();
+        } catch (BatchUpdateException e) {
+            // Причина ошибки пакета содержит код SQLSTATE, по которому отличается ошибка данных от ошибки соединения
+            throw e.getNextException() != null ? e.getNextException() : e;
+        }
+    }
+
+    /**
+     * Возвращает наибольший id в таблице, или 0, если таблица пуста.
+     *
+     * @param table Имя таблицы; задаётся кодом сервера, а не клиентом.
+     */
+    public long getMaxId(String table) throws SQLException {
+        try (Connection conn = this.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM " + table)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Удаляет из диапазона id строки таблицы, на которые не ссылается ни одна квартира.
+     *
+     * @param table  Таблица Coordinates или Houses.
+     * @param column Столбец Flats, ссылающийся на таблицу.
+     * @param fromId Начало диапазона, не включительно.
+     * @param toId   Конец диапазона, включительно.
+     * @return Число удалённых строк.
+     */
+    public int deleteOrphans(String table, String column, long fromId, long toId) throws SQLException {
+        String sql = "DELETE FROM " + table + " t WHERE t.id > ? AND t.id <= ? " +
+                "AND NOT EXISTS (SELECT 1 FROM Flats f WHERE f." + column + " = t.id)";
+        try (Connection conn = this.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, fromId);
+            stmt.setLong(2, toId);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Приводит схему базы данных к последней версии, применяя недостающие миграции.
+     *
+     * @return Текущая версия схемы.
+     */
+    public int migrate() throws SQLException {
+        try (Connection connection = this.getConnection()) {
+            return new MigrationControl(printer).migrate(connection);
         }
-        return null;
     }
 
     public HashSet<Flat> load() throws SQLException {
+        return load(new HashMap<>());
+    }
+
+    /**
+     * Загружает коллекцию и владельцев квартир.
+     * <p>
+     * Строки читаются курсором на стороне сервера порциями по {@code load_fetch_size}, поэтому
+     * драйвер не держит в памяти весь результат запроса. Поток чтения только копирует значения
+     * столбцов, а разбор строк в объекты {@link Flat} выполняется пакетами в {@link ForkJoinPool}.
+     * Число пакетов, ожидающих разбора, ограничено, так что чтение не обгоняет разбор.
+     *
+     * @param owners Словарь, в который записываются пары id квартиры — id создавшего её пользователя.
+     * @return Загруженные квартиры.
+     */
+    public HashSet<Flat> load(Map<Long, Integer> owners) throws SQLException {
+        int fetchSize = Math.max(1, Environment.getInt("load_fetch_size", 5_000));
+        int batchSize = Math.max(1, Environment.getInt("load_batch", 1_000));
+        int threads = Math.max(1, Environment.getInt("load_threads", Runtime.getRuntime().availableProcessors()));
+        long progressInterval = Environment.getLong("load_progress_ms", 2_000);
+
         HashSet<Flat> collection = new HashSet<>();
-        try (Connection connection = this.getConnection();
-             Statement st = connection.createStatement();
-             ResultSet rs = st.executeQuery(
-                     "SELECT f.*, c.x AS coord_x, c.y AS coord_y, h.name AS house_name, h.year AS house_year, h.number_of_floors AS house_number_of_floors, h.number_of_flats_on_floor AS house_number_of_flats_on_floor " +
-                             "FROM Flats f " +
-                             "JOIN Coordinates c ON f.coordinates_id = c.id " +
-                             "JOIN Houses h ON f.house_id = h.id")) {
-            while (rs.next()) {
-                Long id = rs.getLong("id");
-                String name = rs.getString("name");
-                Float coordX = rs.getFloat("coord_x");
-                Double coordY = rs.getDouble("coord_y");
-                LocalDate creationDate = rs.getDate("creation_date").toLocalDate();
-                float area = rs.getFloat("area");
-                Long numberOfRooms = rs.getLong("number_of_rooms");
-                float timeToMetroByTransport = rs.getFloat("time_to_metro_by_Transport");
-                View view = View.valueOf(rs.getString("view"));
-                Transport transport = Transport.valueOf(rs.getString("transport"));
-                String houseName = rs.getString("house_name");
-                int year = rs.getInt("house_year");
-                Long numberOfFloors = rs.getLong("house_number_of_floors");
-                long numberOfFlatsOnFloor = rs.getLong("house_number_of_flats_on_floor");
-
-                Coordinates coordinates = new Coordinates(coordX, coordY);
-                House house = new House(houseName, year, numberOfFloors, numberOfFlatsOnFloor);
-
-                Flat flat = new Flat(id, name, coordinates, creationDate, area, numberOfRooms, timeToMetroByTransport, view, transport, house);
-                collection.add(flat);
+        ForkJoinPool decoders = new ForkJoinPool(threads);
+        ArrayDeque<ForkJoinTask<List<LoadedFlat>>> pending = new ArrayDeque<>();
+        long startedAt = System.currentTimeMillis();
+        long reportAt = startedAt + progressInterval;
+        long rows = 0;
+        try (Connection connection = this.getConnection()) {
+            // Курсор на стороне сервера PostgreSQL работает только внутри транзакции
+            connection.setAutoCommit(false);
+            try (Statement st = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                st.setFetchSize(fetchSize);
+                try (ResultSet rs = st.executeQuery(
+                        "SELECT f.id, f.name, c.x, c.y, f.creation_date, f.area, f.number_of_rooms, f.time_to_metro_by_Transport, " +
+                                "f.view, f.transport, h.name, h.year, h.number_of_floors, h.number_of_flats_on_floor, f.created_by_user " +
+                                "FROM Flats f " +
+                                "JOIN Coordinates c ON f.coordinates_id = c.id " +
+                                "JOIN Houses h ON f.house_id = h.id")) {
+                    List<String[]> batch = new ArrayList<>(batchSize);
+                    while (rs.next()) {
+                        String[] row = new String[LOAD_COLUMNS];
+                        for (int i = 0; i < LOAD_COLUMNS; i++) row[i] = rs.getString(i + 1);
+                        batch.add(row);
+                        rows++;
+                        if (batch.size() == batchSize) {
+                            List<String[]> rowsToDecode = batch;
+                            pending.add(decoders.submit(() -> decode(rowsToDecode)));
+                            batch = new ArrayList<>(batchSize);
+                            while (pending.size() > threads * 2) merge(pending.poll(), collection, owners);
+                        }
+                        if (progressInterval > 0 && System.currentTimeMillis() >= reportAt) {
+                            printer.println("Загрузка коллекции: прочитано " + rows + " строк.");
+                            reportAt = System.currentTimeMillis() + progressInterval;
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        List<String[]> rowsToDecode = batch;
+                        pending.add(decoders.submit(() -> decode(rowsToDecode)));
+                    }
+                }
             }
-            printer.println("Коллекция загружена из базы: " + collection.size() + " элементов.");
+            connection.commit();
+            while (!pending.isEmpty()) merge(pending.poll(), collection, owners);
+            printer.println("Коллекция загружена из базы: " + collection.size() + " элементов за " + (System.currentTimeMillis() - startedAt) + " мс.");
         } catch (SQLException e) {
             printer.printError("Ошибка загрузки коллекции из базы: " + e.getMessage());
             throw e;
+        } finally {
+            decoders.shutdownNow();
         }
         return collection;
     }
+
+    /**
+     * Разбирает пакет строк. Значения столбцов переданы в текстовом виде PostgreSQL,
+     * пустые значения разбираются так же, как их возвращает {@link ResultSet}: как 0.
+     */
+    private static List<LoadedFlat> decode(List<String[]> rows) {
+        List<LoadedFlat> flats = new ArrayList<>(rows.size());
+        for (String[] row : rows) {
+            Coordinates coordinates = new Coordinates(parseFloat(row[2]), parseDouble(row[3]));
+            House house = new House(row[10], (int) parseLong(row[11]), parseLong(row[12]), parseLong(row[13]));
+            Flat flat = new Flat(parseLong(row[0]), row[1], coordinates, LocalDate.parse(row[4]), parseFloat(row[5]),
+                    parseLong(row[6]), parseFloat(row[7]), View.valueOf(row[8]), Transport.valueOf(row[9]), house);
+            flats.add(new LoadedFlat(flat, row[14] == null ? null : (int) parseLong(row[14])));
+        }
+        return flats;
+    }
+
+    private static void merge(ForkJoinTask<List<LoadedFlat>> task, HashSet<Flat> collection, Map<Long, Integer> owners) throws SQLException {
+        List<LoadedFlat> flats;
+        try {
+            flats = task.join();
+        } catch (RuntimeException e) {
+            throw new SQLException("Не удалось разобрать строку коллекции: " + e.getMessage(), e);
+        }
+        for (LoadedFlat loaded : flats) {
+            collection.add(loaded.flat);
+            if (loaded.owner != null) owners.put(loaded.flat.getId(), loaded.owner);
+        }
+    }
+
+    private static void bindInsert(PreparedStatement stmt, Flat flat, int userId) throws SQLException {
+        House house = flat.getHouse();
+        stmt.setFloat(1, flat.getCoordinates().getX());
+        stmt.setDouble(2, flat.getCoordinates().getY());
+        stmt.setString(3, house.getName());
+        stmt.setInt(4, house.getYear());
+        stmt.setLong(5, house.getNumberOfFloors());
+        stmt.setLong(6, house.getNumberOfFlatsOnFloor());
+        stmt.setString(7, flat.getName());
+        stmt.setDate(8, Date.valueOf(flat.getCreationDate()));
+        stmt.setFloat(9, flat.getArea());
+        stmt.setLong(10, flat.getNumberOfRooms());
+        stmt.setFloat(11, flat.getTimeToMetroByTransport());
+        stmt.setString(12, flat.getView().name());
+        stmt.setString(13, flat.getTransport().name());
+        stmt.setInt(14, userId);
+    }
+
+    private static void bindUpdate(PreparedStatement stmt, long flatId, Flat flat, int userId) throws SQLException {
+        House house = flat.getHouse();
+        stmt.setString(1, flat.getName());
+        stmt.setDate(2, Date.valueOf(flat.getCreationDate()));
+        stmt.setFloat(3, flat.getArea());
+        stmt.setLong(4, flat.getNumberOfRooms());
+        stmt.setFloat(5, flat.getTimeToMetroByTransport());
+        stmt.setString(6, flat.getView().name());
+        stmt.setString(7, flat.getTransport().name());
+        stmt.setLong(8, flatId);
+        stmt.setInt(9, userId);
+        stmt.setFloat(10, flat.getCoordinates().getX());
+        stmt.setDouble(11, flat.getCoordinates().getY());
+        stmt.setString(12, house.getName());
+        stmt.setInt(13, house.getYear());
+        stmt.setLong(14, house.getNumberOfFloors());
+        stmt.setLong(15, house.getNumberOfFlatsOnFloor());
+    }
+
+    private static long parseLong(String value) {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static float parseFloat(String value) {
+        return value == null ? 0 : Float.parseFloat(value);
+    }
+
+    private static double parseDouble(String value) {
+        return value == null ? 0 : Double.parseDouble(value);
+    }
 }
@@ -0,0 +1,191 @@
+package controls;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кэш ответов для защиты от повторной обработки запросов, которые клиент отправил повторно,
+ * не дождавшись ответа. Ключ — id сессии и id команды клиента, значение — уже закодированный ответ.
+ * Кэш ограничен по числу записей, по суммарному размеру сохранённых ответов и по времени жизни записи.
+ * Записи хранятся в порядке создания, поэтому устаревшие записи удаляются из начала порядка
+ * при каждом обращении к кэшу, а при превышении объёма вытесняются самые старые ответы.
+ */
+public class DeduplicationControl {
+    /**
+     * Запись кэша. Пока ответ не готов, {@link #getResponse()} возвращает null.
+     */
+    public static class Entry {
+        private final String content;
+        private final long createdAt = System.currentTimeMillis();
+        private volatile byte[] response;
+
+        Entry(String content) {
+            this.content = content;
+        }
+
+        public byte[] getResponse() {
+            return response;
+        }
+    }
+
+    private final Map<Long, Entry> entries;
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final int maxResponseSize;
+    private long bytes; // Суммарный размер сохранённых ответов, защищён монитором entries
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong droppedInFlight = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     * @param maxEntries      Максимальное число хранимых ответов.
+     * @param maxBytes        Максимальный суммарный размер хранимых ответов.
+     * @param ttlMillis       Время жизни записи.
+     * @param maxResponseSize Максимальный размер сохраняемого ответа; большие ответы не кэшируются.
+     */
+    public DeduplicationControl(int maxEntries, long maxBytes, long ttlMillis, int maxResponseSize) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+        this.maxResponseSize = maxResponseSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() <= maxEntries) return false;
+                release(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Регистрирует статистику кэша.
+     */
+    public void start() {
+        StatsControl.register("dedup.replayed", replayed::get);
+        StatsControl.register("dedup.dropped_in_flight", droppedInFlight::get);
+        StatsControl.register("dedup.evicted", evicted::get);
+        StatsControl.register("dedup.entries", this::size);
+        StatsControl.register("dedup.bytes", this::getBytes);
+    }
+
+    private static long key(int sessionId, int clientCommandId) {
+        return ((long) sessionId << 32) | (clientCommandId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Регистрирует начало обработки запроса.
+     *
+     * @param sessionId       Id сессии клиента.
+     * @param clientCommandId Id команды клиента.
+     * @param content         Текст команды; запись с другим текстом считается другим запросом.
+     * @return null, если запрос новый и его нужно выполнить, иначе существующая запись.
+     */
+    public Entry begin(int sessionId, int clientCommandId, String content) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            purgeExpired(now);
+            Entry entry = entries.get(key(sessionId, clientCommandId));
+            if (entry != null && entry.content.equals(content)) {
+                if (entry.response == null) droppedInFlight.incrementAndGet();
+                else replayed.incrementAndGet();
+                return entry;
+            }
+            // Старая запись удаляется, а не заменяется, чтобы новая встала в конец порядка создания
+            if (entry != null) release(entries.remove(key(sessionId, clientCommandId)));
+            entries.put(key(sessionId, clientCommandId), new Entry(content));
+            return null;
+        }
+    }
+
+    /**
+     * Удаляет запись о запросе, который не был выполнен, чтобы его повтор был обработан заново.
+     *
+     * @param sessionId       Id сессии клиента.
+     * @param clientCommandId Id команды клиента.
+     */
+    public void forget(int sessionId, int clientCommandId) {
+        synchronized (entries) {
+            Entry entry = entries.get(key(sessionId, clientCommandId));
+            if (entry != null && entry.response == null) release(entries.remove(key(sessionId, clientCommandId)));
+        }
+    }
+
+    /**
+     * Сохраняет закодированный ответ на запрос, зарегистрированный через {@link #begin}.
+     *
+     * @param sessionId       Id сессии клиента.
+     * @param clientCommandId Id команды клиента.
+     * @param data            Буфер с закодированным ответом.
+     * @param length          Длина ответа.
+     */
+    public void complete(int sessionId, int clientCommandId, byte[] data, int length) {
+        synchronized (entries) {
+            Entry entry = entries.get(key(sessionId, clientCommandId));
+            if (entry == null || entry.response != null) return;
+            if (length > maxResponseSize || length > maxBytes) {
+                // Слишком большой ответ не храним: повтор запроса будет выполнен заново
+                entries.remove(key(sessionId, clientCommandId));
+                return;
+            }
+            entry.response = Arrays.copyOf(data, length);
+            bytes += length;
+            purgeExpired(System.currentTimeMillis());
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * @return Суммарный размер сохранённых ответов в байтах.
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return Число записей в кэше.
+     */
+    public long size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+
+    /**
+     * Удаляет записи старше времени жизни. Записи упорядочены по времени создания,
+     * поэтому просмотр останавливается на первой неустаревшей записи.
+     */
+    private void purgeExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.createdAt >= now - ttlMillis) break;
+            iterator.remove();
+            release(entry);
+        }
+    }
+
+    /**
+     * Вытесняет самые старые сохранённые ответы, пока их суммарный размер превышает допустимый.
+     * Записи запросов, которые ещё выполняются, места не занимают и не вытесняются.
+     */
+    private void evictOverBudget() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.response == null) continue;
+            iterator.remove();
+            release(entry);
+            evicted.incrementAndGet();
+        }
+    }
+
+    private void release(Entry entry) {
+        if (entry != null && entry.response != null) bytes -= entry.response.length;
+    }
+}
@@ -0,0 +1,600 @@
+package controls;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.zip.CRC32;
+
+import connections.WireCodec;
+import consoles.Printer;
+import models.Flat;
+
+/**
+ * Журнал отложенной записи изменений коллекции.
+ * <p>
+ * Изменение сначала дописывается в локальный файл журнала, и клиенту отвечают, как только
+ * запись сброшена на диск. Записи, накопившиеся за время одного сброса, сбрасываются вместе
+ * одним вызовом {@code force}. Только после сброса поток записи применяет изменения к коллекции
+ * в памяти, в порядке номеров записей, поэтому в памяти нет изменений, которых нет на диске,
+ * и порядок изменений в памяти совпадает с порядком их применения к базе. Затем фоновый поток переносит записи в базу данных пакетами:
+ * один пакет — одна транзакция, в которой также запоминается номер последней применённой записи.
+ * При запуске записи журнала с большими номерами применяются к базе до загрузки коллекции.
+ * <p>
+ * Формат записи в файле: длина содержимого (4 байта), CRC32 содержимого (4 байта) и содержимое:
+ * номер записи, тип, id пользователя и данные изменения в кодировке {@link WireCodec}.
+ * Запись, оборванная при аварийной остановке, отбрасывается при чтении.
+ * <p>
+ * Записи дописываются в текущий файл журнала. Когда он вырастает больше заданного размера,
+ * он закрывается и переименовывается в сегмент {@code <файл>.<номер последней записи>}, а записи
+ * продолжают дописываться в новый пустой файл. Сегмент удаляется, как только все его записи
+ * перенесены в базу, поэтому журнал не растёт, даже если перенос никогда не догоняет запись.
+ */
+public class JournalControl {
+    static final byte ADD = 1;
+    static final byte UPDATE = 2;
+    static final byte REMOVE = 3;
+
+    /**
+     * Запись журнала: добавление или изменение квартиры либо удаление квартир по id.
+     */
+    static class Entry {
+        private long sequence;
+        final byte type;
+        final int userId;
+        final Flat flat;
+        final List<Long> ids;
+        private final IntSupplier onDurable; // Применяет изменение к коллекции в памяти, возвращает число изменённых квартир
+        private final CompletableFuture<Integer> durable = new CompletableFuture<>();
+
+        private Entry(byte type, int userId, Flat flat, List<Long> ids, IntSupplier onDurable) {
+            this.type = type;
+            this.userId = userId;
+            this.flat = flat;
+            this.ids = ids;
+            this.onDurable = onDurable;
+        }
+
+        long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Закрытый файл журнала, который удаляется после переноса в базу всех его записей.
+     */
+    private static class Segment {
+        private final Path file;
+        private final long last; // Номер последней записи сегмента
+
+        Segment(Path file, long last) {
+            this.file = file;
+            this.last = last;
+        }
+    }
+
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path path;
+    private final DataBaseControl dataBaseControl;
+    private final int batchSize;
+    private final long maxFileBytes;
+    private final int idBlock;
+    private final Printer printer;
+
+    private FileChannel channel;
+    private final Object appendLock = new Object(); // Порядок номеров записей совпадает с порядком в очереди
+    private long nextSequence = 1;
+    private volatile IOException failure; // Ошибка записи, после которой журнал больше не принимает изменения
+    private final LinkedBlockingQueue<Entry> writes = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Entry> applies = new LinkedBlockingQueue<>();
+    private final AtomicLong written = new AtomicLong(); // Номер последней записи, сброшенной на диск
+    private final AtomicLong applied = new AtomicLong(); // Номер последней записи, применённой к базе
+    private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>(); // Сегменты в порядке номеров
+
+    private final long[] reservedIds;
+    private int nextReserved;
+    private int reservedCount;
+
+    private final AtomicLong fsyncs = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    /**
+     * @param path            Файл журнала.
+     * @param dataBaseControl База данных, в которую переносятся записи.
+     * @param batchSize       Максимальное число записей в одной транзакции.
+     * @param maxFileBytes    Размер файла, после которого записи начинают дописываться в новый файл.
+     * @param idBlock         Число id квартир, резервируемых в последовательности за один запрос.
+     */
+    public JournalControl(Path path, DataBaseControl dataBaseControl, int batchSize, long maxFileBytes, int idBlock, Printer printer) {
+        this.path = path;
+        this.dataBaseControl = dataBaseControl;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxFileBytes = maxFileBytes;
+        this.reservedIds = new long[Math.max(1, idBlock)];
+        this.idBlock = reservedIds.length;
+        this.printer = printer;
+        StatsControl.register("journal.written", written::get);
+        StatsControl.register("journal.applied", applied::get);
+        StatsControl.register("journal.lag", () -> written.get() - applied.get());
+        StatsControl.register("journal.fsyncs", fsyncs::get);
+        StatsControl.register("journal.batches", batches::get);
+        StatsControl.register("journal.skipped", skipped::get);
+        StatsControl.register("journal.rotations", rotations::get);
+        StatsControl.register("journal.segments", segments::size);
+    }
+
+    /**
+     * Определяет, остались ли от прошлого запуска записи журнала, которые, возможно, не перенесены в базу.
+     *
+     * @param path Файл журнала.
+     */
+    public static boolean hasPending(Path path) {
+        try {
+            return (Files.exists(path) && Files.size(path) > 0) || !findSegments(path).isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Применяет к базе записи, не перенесённые в неё до остановки сервера, и очищает журнал.
+     * Вызывается до загрузки коллекции и до {@link #start()}.
+     * <p>
+     * Сегменты и текущий файл читаются по одной записи, и записи применяются пакетами по мере чтения,
+     * поэтому размер журнала не ограничен памятью. Журнал очищается, только если прочитан целиком:
+     * оборванной может быть лишь последняя запись текущего файла, а повреждённый сегмент
+     * останавливает запуск.
+     *
+     * @throws IOException Если журнал не удалось прочитать или сегмент повреждён.
+     */
+    public void replay() throws IOException, SQLException {
+        long checkpoint = dataBaseControl.getJournalCheckpoint();
+        long last = checkpoint;
+        List<Entry> pending = new ArrayList<>();
+        long[] count = {0};
+
+        TreeMap<Long, Path> sealed = findSegments(path);
+        for (Map.Entry<Long, Path> segment : sealed.entrySet()) {
+            last = Math.max(last, segment.getKey());
+            if (segment.getKey() <= checkpoint) continue; // Все записи сегмента уже в базе
+            last = Math.max(last, readFile(segment.getValue(), false, checkpoint, pending, count));
+        }
+        if (Files.exists(path)) {
+            last = Math.max(last, readFile(path, true, checkpoint, pending, count));
+        }
+        if (!pending.isEmpty()) {
+            apply(pending);
+            count[0] += pending.size();
+        }
+        if (count[0] > 0) {
+            printer.println("Из журнала " + path + " применено к базе изменений: " + count[0] + ".");
+        }
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.truncate(0);
+        channel.force(true);
+        for (Path segment : sealed.values()) Files.deleteIfExists(segment);
+        syncDirectory();
+        nextSequence = last + 1;
+        written.set(last);
+        applied.set(last);
+    }
+
+    /**
+     * Читает файл журнала по одной записи и применяет к базе записи с номерами больше контрольной точки.
+     *
+     * @param current    true для текущего файла, в конце которого может быть запись, оборванная при остановке.
+     * @param checkpoint Номер последней записи, уже перенесённой в базу.
+     * @param pending    Накопленные, но ещё не применённые записи; применяются, когда их набирается на пакет.
+     * @param count      Счётчик применённых записей.
+     * @return Наибольший номер записи в файле.
+     */
+    private long readFile(Path file, boolean current, long checkpoint, List<Entry> pending, long[] count) throws IOException, SQLException {
+        long last = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            ByteBuffer payload = ByteBuffer.allocate(64 * 1024);
+            CRC32 crc = new CRC32();
+            long position = 0;
+            while (position < size) {
+                Entry entry = null;
+                header.clear();
+                if (size - position >= RECORD_HEADER_SIZE && readFully(in, header)) {
+                    int length = header.getInt(0);
+                    int checksum = header.getInt(4);
+                    if (length >= 0 && length <= size - position - RECORD_HEADER_SIZE) {
+                        if (payload.capacity() < length) payload = ByteBuffer.allocate(length);
+                        payload.clear().limit(length);
+                        if (readFully(in, payload)) {
+                            payload.flip();
+                            crc.reset();
+                            crc.update(payload.duplicate());
+                            if ((int) crc.getValue() == checksum) {
+                                try {
+                                    entry = decode(payload);
+                                } catch (BufferUnderflowException | IllegalArgumentException ignored) {}
+                            }
+                        }
+                    }
+                }
+                if (entry == null) {
+                    if (!current) throw new IOException("Сегмент журнала " + file + " повреждён на байте " + position);
+                    printer.printWarning("Журнал " + file + " оборван на байте " + position + ", остаток отброшен.");
+                    break;
+                }
+                position = in.position();
+                last = Math.max(last, entry.sequence);
+                if (entry.sequence <= checkpoint) continue;
+                pending.add(entry);
+                if (pending.size() >= batchSize) {
+                    apply(pending);
+                    count[0] += pending.size();
+                    pending.clear();
+                }
+            }
+        }
+        return last;
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Находит закрытые сегменты журнала.
+     *
+     * @return Сегменты по номеру их последней записи.
+     */
+    private static TreeMap<Long, Path> findSegments(Path path) throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                try {
+                    found.put(Long.parseLong(file.getFileName().toString().substring(prefix.length())), file);
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Сбрасывает на диск каталог журнала, чтобы созданные, переименованные и удалённые файлы
+     * пережили аварийную остановку. Не на всех системах каталог можно открыть, тогда сброс пропускается.
+     */
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Закрывает текущий файл журнала как сегмент и открывает новый пустой файл.
+     * Вызывается потоком записи между группами, когда все записи файла уже сброшены на диск.
+     */
+    private void rotate() throws IOException {
+        long last = written.get();
+        Path segment = path.resolveSibling(path.getFileName() + "." + last);
+        channel.close();
+        Files.move(path, segment);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        syncDirectory();
+        segments.add(new Segment(segment, last));
+        rotations.incrementAndGet();
+    }
+
+    /**
+     * Удаляет сегменты, все записи которых перенесены в базу.
+     */
+    private void deleteAppliedSegments() {
+        for (Segment segment; (segment = segments.peek()) != null && segment.last <= applied.get(); ) {
+            try {
+                Files.deleteIfExists(segment.file);
+            } catch (IOException e) {
+                printer.printError("Не удалось удалить сегмент журнала " + segment.file + ": " + e.getMessage());
+            }
+            segments.poll();
+        }
+    }
+
+    /**
+     * Запускает потоки записи журнала и переноса записей в базу.
+     */
+    public void start() {
+        Thread writer = new Thread(this::writeLoop, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Thread applier = new Thread(this::applyLoop, "journal-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * Закрывает файл журнала. Используется, если журнал был только применён при запуске,
+     * а изменения записываются в базу сразу.
+     */
+    public void close() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            printer.printError("Ошибка при закрытии журнала: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Выдаёт id для новой квартиры из заранее зарезервированных в последовательности базы.
+     */
+    public synchronized long reserveId() throws SQLException {
+        if (nextReserved == reservedCount) {
+            long[] ids = dataBaseControl.reserveFlatIds(idBlock);
+            System.arraycopy(ids, 0, reservedIds, 0, ids.length);
+            reservedCount = ids.length;
+            nextReserved = 0;
+        }
+        return reservedIds[nextReserved++];
+    }
+
+    /**
+     * Ставит добавление квартиры в журнал. У квартиры уже должен быть id из {@link #reserveId()}.
+     *
+     * @param onDurable Применяет изменение к коллекции в памяти. Вызывается потоком записи журнала
+     *                  после сброса записи на диск и должен проверять условия изменения так же, как база.
+     * @return Запись; дождаться её сохранения на диске можно методом {@link #await(Entry)}.
+     */
+    public Entry add(Flat flat, int userId, IntSupplier onDurable) throws IOException {
+        return append(new Entry(ADD, userId, flat, null, onDurable));
+    }
+
+    public Entry update(Flat flat, int userId, IntSupplier onDurable) throws IOException {
+        return append(new Entry(UPDATE, userId, flat, null, onDurable));
+    }
+
+    public Entry remove(List<Long> ids, int userId, IntSupplier onDurable) throws IOException {
+        return append(new Entry(REMOVE, userId, null, ids, onDurable));
+    }
+
+    /**
+     * Ждёт, пока запись будет сброшена на диск и применена к коллекции в памяти.
+     * Ожидание не прерывается: к его концу изменение либо сохранено, либо точно не сохранено.
+     *
+     * @return Число квартир, изменённых в памяти, или -1, если запись не сохранена.
+     */
+    public int await(Entry entry) {
+        try {
+            return entry.durable.join();
+        } catch (CompletionException e) {
+            printer.printError("Ошибка записи журнала: " + e.getCause().getMessage());
+            return -1;
+        }
+    }
+
+
+    private Entry append(Entry entry) throws IOException {
+        synchronized (appendLock) {
+            if (failure != null) throw failure;
+            entry.sequence = nextSequence++;
+            writes.add(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Дописывает в файл все записи, накопившиеся в очереди, и сбрасывает их на диск одним вызовом.
+     */
+    private void writeLoop() {
+        List<Entry> group = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        CRC32 crc = new CRC32();
+        while (true) {
+            try {
+                group.add(writes.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            writes.drainTo(group);
+            long groupStart = -1;
+            try {
+                if (channel.size() > maxFileBytes) {
+                    // Если все записи уже в базе, файл можно просто очистить
+                    if (applied.get() == written.get()) channel.truncate(0);
+                    else rotate();
+                }
+                groupStart = channel.position();
+                for (Entry entry : group) {
+                    buffer = encode(entry, buffer, crc);
+                    while (buffer.hasRemaining()) channel.write(buffer);
+                }
+                channel.force(false);
+                fsyncs.incrementAndGet();
+                written.set(group.get(group.size() - 1).sequence);
+                for (Entry entry : group) {
+                    int changed = applyInMemory(entry);
+                    applies.add(entry);
+                    entry.durable.complete(changed);
+                }
+            } catch (IOException e) {
+                printer.printError("Журнал " + path + " недоступен для записи, изменения больше не принимаются: " + e.getMessage());
+                synchronized (appendLock) {
+                    failure = e;
+                }
+                // Клиентам сообщается об ошибке, поэтому записи группы не должны примениться и при перезапуске
+                if (groupStart >= 0) {
+                    try {
+                        channel.truncate(groupStart);
+                        channel.force(false);
+                    } catch (IOException truncateError) {
+                        printer.printError("Не удалось отбросить несохранённые записи журнала: " + truncateError.getMessage());
+                    }
+                }
+                for (Entry entry : group) entry.durable.completeExceptionally(e);
+                for (Entry entry; (entry = writes.poll()) != null; ) entry.durable.completeExceptionally(e);
+            }
+            group.clear();
+        }
+    }
+
+    private int applyInMemory(Entry entry) {
+        if (entry.onDurable == null) return 0;
+        try {
+            return entry.onDurable.getAsInt();
+        } catch (RuntimeException e) {
+            printer.printError("Ошибка применения записи журнала " + entry.sequence + " к коллекции: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Переносит сохранённые на диске записи в базу пакетами. Если ошибка временная, пакет
+     * повторяется, пока не будет применён.
+     */
+    private void applyLoop() {
+        List<Entry> batch = new ArrayList<>();
+        long backoff = 100;
+        while (true) {
+            if (batch.isEmpty()) {
+                try {
+                    batch.add(applies.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                applies.drainTo(batch, batchSize - 1);
+            }
+            try {
+                apply(batch);
+                batch.clear();
+                backoff = 100;
+                deleteAppliedSegments();
+            } catch (SQLException e) {
+                printer.printError("Ошибка переноса журнала в базу данных, повтор через " + backoff + " мс: " + e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, 10_000);
+            }
+        }
+    }
+
+    /**
+     * Применяет пакет записей одной транзакцией. Если пакет отклонён из-за самих данных
+     * (см. {@link #isRejected}), записи применяются по одной, и отклонённые записи пропускаются.
+     *
+     * @param batch Записи в порядке номеров.
+     * @throws SQLException Если ошибка временная и пакет нужно повторить.
+     */
+    private void apply(List<Entry> batch) throws SQLException {
+        try {
+            dataBaseControl.applyJournal(batch);
+        } catch (SQLException e) {
+            if (!isRejected(e)) throw e;
+            for (Entry entry : batch) {
+                try {
+                    dataBaseControl.applyJournal(List.of(entry));
+                } catch (SQLException entryError) {
+                    if (!isRejected(entryError)) throw entryError;
+                    skipped.incrementAndGet();
+                    printer.printError("Запись журнала " + entry.sequence + " отклонена базой данных и пропущена: " + entryError.getMessage());
+                    dataBaseControl.setJournalCheckpoint(entry.sequence);
+                }
+            }
+        }
+        batches.incrementAndGet();
+        applied.set(batch.get(batch.size() - 1).sequence);
+    }
+
+    /**
+     * Определяет, отклонила ли база запись из-за самих данных: ошибки классов SQLSTATE 22 (данные)
+     * и 23 (ограничения целостности) повторятся при любой попытке. Остальные ошибки, в том числе
+     * обрыв соединения (08), конфликт сериализации и взаимоблокировка (40), нехватка ресурсов (53),
+     * занятый объект (55) и остановка сервера (57), считаются временными: клиенту уже ответили,
+     * что изменение сохранено, поэтому такую запись нельзя пропустить, её нужно повторить.
+     */
+    private static boolean isRejected(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    /**
+     * Дописывает запись в буфер, увеличивая буфер, если запись не помещается.
+     *
+     * @return Буфер, подготовленный к записи в файл.
+     */
+    private static ByteBuffer encode(Entry entry, ByteBuffer buffer, CRC32 crc) {
+        while (true) {
+            buffer.clear();
+            try {
+                buffer.position(RECORD_HEADER_SIZE);
+                WireCodec.putVarLong(buffer, entry.sequence);
+                buffer.put(entry.type);
+                WireCodec.putVarInt(buffer, entry.userId);
+                if (entry.type == REMOVE) {
+                    WireCodec.putVarInt(buffer, entry.ids.size());
+                    for (Long id : entry.ids) WireCodec.putVarLong(buffer, id);
+                }
+                else {
+                    entry.flat.writeWire(buffer);
+                }
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        int length = buffer.position() - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static Entry decode(ByteBuffer in) {
+        long sequence = WireCodec.getVarLong(in);
+        byte type = in.get();
+        int userId = WireCodec.getVarInt(in);
+        Entry entry;
+        if (type == REMOVE) {
+            int count = WireCodec.getVarInt(in);
+            if (count < 0) throw new IllegalArgumentException("Отрицательное число id: " + count);
+            List<Long> ids = new ArrayList<>(Math.min(count, in.remaining()));
+            for (int i = 0; i < count; i++) ids.add(WireCodec.getVarLong(in));
+            entry = new Entry(type, userId, null, ids, null);
+        }
+        else if (type == ADD || type == UPDATE) {
+            Flat flat = new Flat();
+            flat.readWire(in);
+            entry = new Entry(type, userId, flat, null, null);
+        }
+        else {
+            throw new IllegalArgumentException("Неизвестный тип записи журнала: " + type);
+        }
+        entry.sequence = sequence;
+        return entry;
+    }
+}
@@ -0,0 +1,106 @@
+package controls;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import consoles.Printer;
+
+/**
+ * Применяет к базе данных пронумерованные скрипты миграций.
+ * <p>
+ * Скрипты лежат среди ресурсов в {@code /models/migrations} и называются по номеру версии
+ * ({@code 001.sql}, {@code 002.sql}, ...); номера идут подряд. Применённые версии записываются
+ * в таблицу {@code schema_version}. Каждый скрипт выполняется в отдельной транзакции вместе с записью
+ * его версии, поэтому прерванная миграция не оставляет схему в промежуточном состоянии.
+ * Несколько серверов, запущенных одновременно, применяют миграции по очереди благодаря
+ * рекомендательной блокировке.
+ */
+public class MigrationControl {
+    private static final String RESOURCE_PATH = "/models/migrations/";
+    private static final long LOCK_KEY = 0x5345_5256_4552_4C37L; // Ключ рекомендательной блокировки миграций
+
+    private final Printer printer;
+
+    public MigrationControl(Printer printer) {
+        this.printer = printer;
+    }
+
+    /**
+     * Применяет все миграции, версия которых больше последней применённой.
+     *
+     * @param connection Соединение с базой данных.
+     * @return Текущая версия схемы.
+     * @throws SQLException Если миграцию не удалось применить.
+     */
+    public int migrate(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT now())");
+            st.execute("SELECT pg_advisory_lock(" + LOCK_KEY + ")");
+        }
+        try {
+            int version = currentVersion(connection);
+            while (true) {
+                String script = readScript(version + 1);
+                if (script == null) break;
+                apply(connection, version + 1, script);
+                version++;
+                printer.println("Применена миграция базы данных " + version + ".");
+            }
+            return version;
+        } finally {
+            try (Statement st = connection.createStatement()) {
+                st.execute("SELECT pg_advisory_unlock(" + LOCK_KEY + ")");
+            }
+        }
+    }
+
+
+    private int currentVersion(Connection connection) throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private void apply(Connection connection, int version, String script) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement st = connection.createStatement();
+             PreparedStatement record = connection.prepareStatement("INSERT INTO schema_version (version) VALUES (?)")) {
+            st.execute(script);
+            record.setInt(1, version);
+            record.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Ошибка применения миграции " + version + ": " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Читает скрипт миграции.
+     *
+     * @param version Версия схемы, которую создаёт скрипт.
+     * @return Текст скрипта, или null, если такой миграции нет.
+     */
+    private String readScript(int version) throws SQLException {
+        String name = RESOURCE_PATH + String.format("%03d.sql", version);
+        try (InputStream in = MigrationControl.class.getResourceAsStream(name)) {
+            if (in == null) return null;
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Не удалось прочитать миграцию " + name + ": " + e.getMessage(), e);
+        }
+    }
+}
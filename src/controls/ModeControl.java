@@ -12,6 +12,8 @@ import consoles.Console;
 import consoles.IMode;
 import consoles.Printer;
 import consoles.Script;
+import util.Environment;
+import util.StringWrapper;
 
 /**
  * The ModeControl class implements the {@link IResponseProceeder} interface and manages
@@ -45,38 +47,48 @@ public class ModeControl implements IResponseProceeder{
     private IRequestProceeder commandControl;
 
 
+    /**
+     * The stage that runs commands received from the clients. When its queue is full,
+     * the client immediately gets a {@link ResponseType#BUSY} response.
+     */
+    private Stage workers = new Stage("dispatch", Environment.getInt("dispatch_threads", Runtime.getRuntime().availableProcessors() * 2),
+            Environment.getInt("dispatch_queue", 1024));
+
+
     private Thread connectionThread = new Thread(() -> {
-            try {
-                while (true) {
-                    Request r = connections.read();
-                    Thread.sleep(10);
-                    if (r != null) {
-                        new Thread(() -> {
-                            ServerResponse resp = (ServerResponse) commandControl.proceedRequest(r);
-                            connections.sendResponse(resp);
-                        }).start();
+            connections.listen(r -> {
+                boolean accepted = workers.submit(() -> {
+                    ServerResponse resp;
+                    try {
+                        resp = (ServerResponse) commandControl.proceedRequest(r);
                     }
-                    
+                    catch (RuntimeException e) {
+                        printer.printError("Ошибка при выполнении команды " + r.getContent() + ": " + e);
+                        resp = null;
+                    }
+                    if (resp != null) connections.sendResponse(resp);
+                    else connections.abandon(r);
+                });
+                if (!accepted) {
+                    connections.sendResponse(new ServerResponse(r.getClientCommandId(), ResponseType.BUSY, PrintType.ERROR, new StringWrapper("Сервер перегружен, повторите запрос позже"), r.getClientId()));
                 }
-            }
-            catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            });
         });
     
     
 
     /**
-     * Constructs a new ModeControl instance and initializes the console mode.
+     * Constructs a new ModeControl instance that shares the given {@link DataBaseControl}
+     * with the collection, so that both use the same user directory.
      */
-    public ModeControl(IRequestProceeder commandControl) {
+    public ModeControl(IRequestProceeder commandControl, DataBaseControl dataBaseControl) {
         super();
 
         this.commandControl = commandControl;
 
         printer = new Printer();
         console = new Console(printer);
-        connections = new ConnectionControl(25566, printer);
+        connections = new ConnectionControl(Environment.getInt("server_port", 25566), Environment.getInt("udp_listeners", 1), printer, dataBaseControl);
         connectionThread.start();
     }
 
@@ -0,0 +1,76 @@
+package controls;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import util.TokenBucket;
+
+/**
+ * Ограничение частоты запросов по сессии и по имени пользователя.
+ * <p>
+ * Лимит сессии проверяется до декодирования запроса, лимит пользователя — после декодирования,
+ * но до аутентификации, поэтому отброшенный запрос не тратит ни десериализацию, ни обращение к базе данных.
+ * Нулевая частота отключает соответствующий лимит.
+ */
+public class RateLimitControl {
+    private final double sessionRate;
+    private final int sessionBurst;
+    private final double userRate;
+    private final int userBurst;
+    private final int maxUsers;
+    private final Map<String, TokenBucket> users = new ConcurrentHashMap<>();
+    private final AtomicLong sessionThrottled = new AtomicLong();
+    private final AtomicLong userThrottled = new AtomicLong();
+
+    /**
+     * @param sessionRate  Число запросов в секунду для одной сессии.
+     * @param sessionBurst Максимальное число запросов сессии подряд.
+     * @param userRate     Число запросов в секунду для одного пользователя.
+     * @param userBurst    Максимальное число запросов пользователя подряд.
+     * @param maxUsers     Число отслеживаемых имён, после которого забываются неактивные.
+     */
+    public RateLimitControl(double sessionRate, int sessionBurst, double userRate, int userBurst, int maxUsers) {
+        this.sessionRate = sessionRate;
+        this.sessionBurst = sessionBurst;
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        this.maxUsers = maxUsers;
+        StatsControl.register("ratelimit.session_throttled", sessionThrottled::get);
+        StatsControl.register("ratelimit.user_throttled", userThrottled::get);
+        StatsControl.register("ratelimit.users", users::size);
+    }
+
+    /**
+     * Расходует токен сессии.
+     *
+     * @param session Сессия клиента.
+     * @return true, если запрос можно обрабатывать; false, если его нужно отбросить.
+     */
+    public boolean allowSession(Session session) {
+        if (sessionRate <= 0) return true;
+        TokenBucket bucket = session.getRateLimit();
+        if (bucket == null) {
+            bucket = new TokenBucket(sessionRate, sessionBurst);
+            session.setRateLimit(bucket);
+        }
+        if (bucket.tryAcquire()) return true;
+        sessionThrottled.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Расходует токен пользователя.
+     *
+     * @param userName Имя пользователя из запроса.
+     * @return true, если запрос можно обрабатывать; false, если его нужно отбросить.
+     */
+    public boolean allowUser(String userName) {
+        if (userRate <= 0 || userName == null) return true;
+        if (users.size() >= maxUsers) users.values().removeIf(TokenBucket::isFull);
+        TokenBucket bucket = users.computeIfAbsent(userName, name -> new TokenBucket(userRate, userBurst));
+        if (bucket.tryAcquire()) return true;
+        userThrottled.incrementAndGet();
+        return false;
+    }
+}
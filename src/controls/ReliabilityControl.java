@@ -0,0 +1,248 @@
+package controls;
+
+import connections.Reliable;
+import consoles.Printer;
+import util.TimerWheel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Надёжная доставка ответов поверх UDP для клиентов, которые её запросили.
+ * <p>
+ * Каждой сессии соответствует окно {@link Window}: датаграммы нумеруются, неподтверждённые
+ * датаграммы хранятся в окне и отправляются повторно по таймеру, пока клиент не подтвердит
+ * их кумулятивно или выборочно. Окно ограничено по размеру; датаграммы, не поместившиеся в окно,
+ * ждут в очереди сессии. Таймеры всех сессий обслуживает один поток {@link TimerWheel},
+ * поэтому отдельный поток на клиента не нужен.
+ */
+public class ReliabilityControl {
+    private static class Packet {
+        private final int sequence;
+        private final byte[] datagram;
+        private long sentAt;
+        private long rto;
+        private int attempts;
+        private TimerWheel.Timeout timeout; // Таймер повторной отправки, отменяется при подтверждении
+
+        Packet(int sequence, byte[] datagram) {
+            this.sequence = sequence;
+            this.datagram = datagram;
+        }
+    }
+
+    /**
+     * Состояние надёжной доставки одной сессии. Все поля защищены монитором окна.
+     */
+    public class Window {
+        private final Session session;
+        private final Packet[] inFlight = new Packet[windowSize]; // Индекс — номер датаграммы по модулю размера окна
+        private final ArrayDeque<byte[]> backlog = new ArrayDeque<>();
+        private int nextSequence;
+        private int ackedThrough = -1;
+        private long srtt;
+        private long rttvar;
+        private long rto = initialRto;
+        private boolean closed;
+
+        Window(Session session) {
+            this.session = session;
+        }
+    }
+
+    private final int windowSize;
+    private final int maxBacklog;
+    private final int maxAttempts;
+    private final long initialRto;
+    private final long minRto = 20;
+    private final long maxRto = 5_000;
+    private final TimerWheel timers;
+    private final Printer printer;
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong retransmitted = new AtomicLong();
+    private final AtomicLong acked = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+    private final AtomicLong backlogDropped = new AtomicLong();
+
+    /**
+     * @param windowSize  Максимальное число неподтверждённых датаграмм сессии, не больше {@link Reliable#SACK_BITS}.
+     * @param maxBacklog  Максимальное число датаграмм, ожидающих места в окне.
+     * @param maxAttempts Число отправок датаграммы, после которого клиент считается недоступным.
+     * @param initialRto  Начальный таймаут повторной отправки в миллисекундах.
+     */
+    public ReliabilityControl(int windowSize, int maxBacklog, int maxAttempts, long initialRto, Printer printer) {
+        this.windowSize = Math.max(1, Math.min(windowSize, Reliable.SACK_BITS));
+        this.maxBacklog = maxBacklog;
+        this.maxAttempts = maxAttempts;
+        this.initialRto = initialRto;
+        this.printer = printer;
+        this.timers = new TimerWheel("retransmit-timer", 10, 512, printer);
+        StatsControl.register("reliable.sent", sent::get);
+        StatsControl.register("reliable.retransmitted", retransmitted::get);
+        StatsControl.register("reliable.acked", acked::get);
+        StatsControl.register("reliable.abandoned", abandoned::get);
+        StatsControl.register("reliable.backlog_dropped", backlogDropped::get);
+    }
+
+    /**
+     * Включает или выключает надёжную доставку для сессии в соответствии с флагом последнего запроса.
+     *
+     * @param session  Сессия клиента.
+     * @param reliable true, если клиент запросил надёжную доставку.
+     */
+    public void configure(Session session, boolean reliable) {
+        Window window = session.getWindow();
+        if (reliable && window == null) {
+            session.setWindow(new Window(session));
+        }
+        else if (!reliable && window != null) {
+            session.setWindow(null);
+            close(window);
+        }
+    }
+
+    /**
+     * Отправляет датаграмму с заголовком {@link Reliable}. Если окно заполнено, датаграмма
+     * ставится в очередь и отправляется после подтверждения предыдущих.
+     *
+     * @param window  Окно сессии.
+     * @param payload Содержимое датаграммы от позиции до предела.
+     */
+    public void send(Window window, ByteBuffer payload) throws IOException {
+        byte[] datagram = new byte[Reliable.HEADER_SIZE + payload.remaining()];
+        payload.get(datagram, Reliable.HEADER_SIZE, payload.remaining());
+        synchronized (window) {
+            if (window.closed) return;
+            if (window.backlog.isEmpty() && hasRoom(window)) {
+                transmit(window, datagram);
+            }
+            else if (window.backlog.size() < maxBacklog) {
+                window.backlog.add(datagram);
+            }
+            else {
+                backlogDropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Обрабатывает датаграмму подтверждения: снимает подтверждённые датаграммы с окна
+     * и отправляет ожидающие в очереди.
+     *
+     * @param session Сессия клиента.
+     * @param buffer  Буфер с датаграммой подтверждения.
+     */
+    public void onAck(Session session, ByteBuffer buffer) throws IOException {
+        Window window = session.getWindow();
+        if (window == null) return;
+        buffer.getInt();
+        int cumulative = buffer.getInt();
+        long selective = buffer.getLong();
+        long now = System.currentTimeMillis();
+
+        synchronized (window) {
+            if (window.closed || cumulative >= window.nextSequence) return;
+            for (int sequence = window.ackedThrough + 1; sequence <= cumulative; sequence++) {
+                release(window, sequence, now);
+            }
+            if (cumulative > window.ackedThrough) window.ackedThrough = cumulative;
+            for (int bit = 0; bit < Reliable.SACK_BITS && selective != 0; bit++, selective >>>= 1) {
+                if ((selective & 1) != 0) release(window, cumulative + 1 + bit, now);
+            }
+            while (!window.backlog.isEmpty() && hasRoom(window)) {
+                transmit(window, window.backlog.poll());
+            }
+        }
+    }
+
+    /**
+     * Останавливает таймер повторной отправки.
+     */
+    public void close() {
+        timers.stop();
+    }
+
+
+    private boolean hasRoom(Window window) {
+        return window.nextSequence <= window.ackedThrough + windowSize;
+    }
+
+    private void transmit(Window window, byte[] datagram) throws IOException {
+        int sequence = window.nextSequence++;
+        ByteBuffer header = ByteBuffer.wrap(datagram);
+        Reliable.writeHeader(header, sequence);
+        Packet packet = new Packet(sequence, datagram);
+        packet.rto = window.rto;
+        window.inFlight[sequence % windowSize] = packet;
+        sent.incrementAndGet();
+        emit(window, packet);
+    }
+
+    private void emit(Window window, Packet packet) throws IOException {
+        packet.sentAt = System.currentTimeMillis();
+        packet.attempts++;
+        packet.timeout = timers.schedule(packet.rto, () -> onTimeout(window, packet));
+        window.session.getChannel().send(ByteBuffer.wrap(packet.datagram), window.session.getAddress());
+    }
+
+    private void release(Window window, int sequence, long now) {
+        if (sequence <= window.ackedThrough || sequence >= window.nextSequence) return;
+        int slot = sequence % windowSize;
+        Packet packet = window.inFlight[slot];
+        if (packet == null || packet.sequence != sequence) return;
+        window.inFlight[slot] = null;
+        packet.timeout.cancel();
+        acked.incrementAndGet();
+        // Время доставки измеряется только по датаграммам без повторов (алгоритм Карна)
+        if (packet.attempts == 1) sampleRtt(window, now - packet.sentAt);
+    }
+
+    /**
+     * Обновляет оценку времени доставки и таймаут повторной отправки по RFC 6298.
+     */
+    private void sampleRtt(Window window, long rtt) {
+        if (window.srtt == 0) {
+            window.srtt = rtt;
+            window.rttvar = rtt / 2;
+        }
+        else {
+            window.rttvar = (3 * window.rttvar + Math.abs(window.srtt - rtt)) / 4;
+            window.srtt = (7 * window.srtt + rtt) / 8;
+        }
+        window.rto = Math.max(minRto, Math.min(maxRto, window.srtt + 4 * window.rttvar));
+    }
+
+    private void onTimeout(Window window, Packet packet) {
+        synchronized (window) {
+            if (window.closed || window.inFlight[packet.sequence % windowSize] != packet) return;
+            if (packet.attempts >= maxAttempts) {
+                abandoned.incrementAndGet();
+                printer.printWarning("Клиент " + window.session.getId() + " не подтверждает получение ответов, надёжная доставка отключена.");
+                if (window.session.getWindow() == window) window.session.setWindow(null);
+                close(window);
+                return;
+            }
+            packet.rto = Math.min(maxRto, packet.rto * 2);
+            retransmitted.incrementAndGet();
+            try {
+                emit(window, packet);
+            } catch (IOException e) {
+                printer.printError("Ошибка при повторной отправке данных: " + e.getMessage());
+            }
+        }
+    }
+
+    private void close(Window window) {
+        synchronized (window) {
+            window.closed = true;
+            window.backlog.clear();
+            for (Packet packet : window.inFlight) {
+                if (packet != null) packet.timeout.cancel();
+            }
+            Arrays.fill(window.inFlight, null);
+        }
+    }
+}
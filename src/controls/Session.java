@@ -0,0 +1,99 @@
+package controls;
+
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+
+import util.TokenBucket;
+
+/**
+ * Сессия клиента, подключенного к серверу. Id сессии не меняется за время её жизни
+ * и используется как id клиента в {@link connections.ServerRequest} и {@link connections.ServerResponse}.
+ */
+public class Session {
+    private final int id;
+    private final InetSocketAddress address;
+    private final long createdAt = System.currentTimeMillis();
+    private volatile long lastSeen = createdAt;
+    private volatile DatagramChannel channel; // Канал, через который клиенту отправляются ответы
+    private volatile TcpControl.Connection connection; // Соединение TCP, если клиент подключился по TCP
+    private volatile boolean binary; // Клиент использует бинарный кодек connections.WireCodec
+    private volatile boolean acceptsDeflate; // Клиент принимает сжатые ответы
+    private volatile TokenBucket rateLimit; // Лимит частоты запросов сессии
+    private volatile ReliabilityControl.Window window; // Окно надёжной доставки, null — ответы отправляются без подтверждений
+
+    public Session(int id, InetSocketAddress address) {
+        this.id = id;
+        this.address = address;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    public DatagramChannel getChannel() {
+        return channel;
+    }
+
+    public void setChannel(DatagramChannel channel) {
+        this.channel = channel;
+    }
+
+    public TcpControl.Connection getConnection() {
+        return connection;
+    }
+
+    public void setConnection(TcpControl.Connection connection) {
+        this.connection = connection;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public boolean isAcceptsDeflate() {
+        return acceptsDeflate;
+    }
+
+    public void setAcceptsDeflate(boolean acceptsDeflate) {
+        this.acceptsDeflate = acceptsDeflate;
+    }
+
+    public TokenBucket getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(TokenBucket rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public ReliabilityControl.Window getWindow() {
+        return window;
+    }
+
+    public void setWindow(ReliabilityControl.Window window) {
+        this.window = window;
+    }
+
+    /**
+     * Отмечает, что от клиента только что пришли данные.
+     */
+    public void touch() {
+        lastSeen = System.currentTimeMillis();
+    }
+}
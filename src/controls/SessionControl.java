@@ -0,0 +1,127 @@
+package controls;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import consoles.Printer;
+
+/**
+ * Реестр сессий клиентов. Поиск сессии по адресу и по id выполняется за O(1),
+ * а сессии, от которых долго не было данных, удаляются фоновым потоком.
+ * <p>
+ * По адресу ищутся только сессии UDP. Сессия TCP принадлежит своему соединению и доступна
+ * только по id, поэтому соединение с того же адреса и порта, что и у клиента UDP,
+ * не получает и не удаляет его сессию.
+ */
+public class SessionControl {
+    private final Map<InetSocketAddress, Session> byAddress = new ConcurrentHashMap<>();
+    private final Map<Integer, Session> byId = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final long idleTimeoutMillis; // Время бездействия, после которого сессия удаляется
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Printer printer;
+
+    /**
+     * @param idleTimeoutMillis Время бездействия, после которого сессия удаляется.
+     * @param printer           {@link Printer} для вывода сообщений.
+     */
+    public SessionControl(long idleTimeoutMillis, Printer printer) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.printer = printer;
+        long period = Math.max(1000, idleTimeoutMillis / 4);
+        sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Возвращает сессию клиента с указанным адресом, создавая её при первом обращении,
+     * и обновляет время последней активности.
+     *
+     * @param address Адрес клиента.
+     * @return Сессия клиента.
+     */
+    public Session touch(InetSocketAddress address) {
+        Session session = byAddress.computeIfAbsent(address, a -> {
+            Session created = new Session(nextId.getAndIncrement(), a);
+            byId.put(created.getId(), created);
+            return created;
+        });
+        session.touch();
+        return session;
+    }
+
+    /**
+     * Создаёт сессию для нового TCP-соединения. Сессия не связывается с адресом
+     * и удаляется вызовом {@link #remove(Session)} при закрытии соединения.
+     *
+     * @param address Адрес клиента.
+     * @return Новая сессия.
+     */
+    public Session open(InetSocketAddress address) {
+        Session created = new Session(nextId.getAndIncrement(), address);
+        byId.put(created.getId(), created);
+        created.touch();
+        return created;
+    }
+
+    /**
+     * Возвращает сессию по её id.
+     *
+     * @param id Id сессии.
+     * @return Сессия, или null, если она не существует или уже удалена.
+     */
+    public Session get(int id) {
+        return byId.get(id);
+    }
+
+    /**
+     * Удаляет сессию, например при закрытии её соединения.
+     *
+     * @param session Сессия.
+     */
+    public void remove(Session session) {
+        byAddress.remove(session.getAddress(), session);
+        byId.remove(session.getId(), session);
+    }
+
+    /**
+     * Возвращает число активных сессий.
+     *
+     * @return Число сессий.
+     */
+    public int size() {
+        return byId.size();
+    }
+
+    /**
+     * Удаляет сессии, бездействующие дольше допустимого времени.
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - idleTimeoutMillis;
+        int evicted = 0;
+        for (Session session : byId.values()) {
+            // Сессия открытого TCP-соединения удаляется при его закрытии
+            if (session.getConnection() != null) continue;
+            if (session.getLastSeen() < deadline && byAddress.remove(session.getAddress(), session)) {
+                byId.remove(session.getId());
+                evicted++;
+            }
+        }
+        if (evicted > 0) printer.println("Удалено неактивных сессий: " + evicted);
+    }
+
+    /**
+     * Останавливает фоновое удаление сессий.
+     */
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
@@ -0,0 +1,92 @@
+package controls;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Этап обработки запросов: ограниченное число потоков и ограниченная очередь.
+ * Если очередь заполнена, задача не ставится в очередь, и вызывающий код должен
+ * сразу ответить клиенту отказом, вместо того чтобы копить работу без ограничений.
+ * <p>
+ * Глубина очереди, счётчики задач и среднее время ожидания в очереди и выполнения
+ * публикуются в {@link StatsControl} с префиксом имени этапа.
+ */
+public class Stage {
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final LongAdder finished = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder(); // Суммарное время ожидания задач в очереди
+    private final LongAdder runNanos = new LongAdder(); // Суммарное время выполнения задач
+
+    /**
+     * @param name        Имя этапа, используется в именах потоков и счётчиков.
+     * @param concurrency Число потоков этапа.
+     * @param capacity    Максимальное число задач, ожидающих в очереди.
+     */
+    public Stage(String name, int concurrency, int capacity) {
+        this.name = name;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                task -> {
+                    Thread thread = new Thread(task, name + "-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        StatsControl.register(name + ".queue_depth", () -> executor.getQueue().size());
+        StatsControl.register(name + ".active", executor::getActiveCount);
+        StatsControl.register(name + ".completed", executor::getCompletedTaskCount);
+        StatsControl.register(name + ".rejected", rejected::get);
+        StatsControl.register(name + ".wait_us_avg", () -> average(waitNanos));
+        StatsControl.register(name + ".run_us_avg", () -> average(runNanos));
+    }
+
+    /**
+     * Ставит задачу в очередь этапа.
+     *
+     * @param task Задача.
+     * @return true, если задача принята; false, если очередь заполнена или этап остановлен.
+     */
+    public boolean submit(Runnable task) {
+        long enqueuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                waitNanos.add(startedAt - enqueuedAt);
+                try {
+                    task.run();
+                } finally {
+                    runNanos.add(System.nanoTime() - startedAt);
+                    finished.increment();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private long average(LongAdder nanos) {
+        long count = finished.sum();
+        return count == 0 ? 0 : nanos.sum() / count / 1000;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Останавливает этап. Задачи, уже стоящие в очереди, будут выполнены.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,49 @@
+package controls;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The StatsControl class keeps named runtime counters of the server,
+ * such as pool usage or queue depths, and renders them for the stats command.
+ */
+public class StatsControl {
+    private static final Map<String, LongSupplier> counters = new ConcurrentSkipListMap<>();
+
+    /**
+     * Registers a counter under the given name, replacing any previous counter with the same name.
+     *
+     * @param name    The name of the counter.
+     * @param counter The supplier of the current counter value.
+     */
+    public static void register(String name, LongSupplier counter) {
+        counters.put(name, counter);
+    }
+
+    /**
+     * Returns the current value of a registered counter.
+     *
+     * @param name The name of the counter.
+     * @return The counter value, or 0 if no such counter is registered.
+     */
+    public static long get(String name) {
+        LongSupplier counter = counters.get(name);
+        return counter == null ? 0 : counter.getAsLong();
+    }
+
+    /**
+     * Renders all registered counters sorted by name, one per line.
+     *
+     * @return A string representation of the counters, or a message if there are none.
+     */
+    public static String render() {
+        if (counters.isEmpty()) return "Счётчики отсутствуют.";
+
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, LongSupplier> entry : counters.entrySet()) {
+            result.append(entry.getKey()).append(": ").append(entry.getValue().getAsLong()).append("\n");
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,308 @@
+package controls;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import consoles.Printer;
+
+/**
+ * Транспорт TCP для тех же запросов и ответов, что передаются по UDP.
+ * <p>
+ * Каждое сообщение передаётся кадром: длина (4 байта, big-endian) и содержимое — бинарное
+ * сообщение {@link connections.WireCodec} или сериализованный объект Java. Ограничения размера
+ * датаграммы здесь нет, поэтому ответы не фрагментируются.
+ * <p>
+ * Соединения распределяются по нескольким потокам, у каждого свой {@link Selector}.
+ * Каждому соединению соответствует своя {@link Session}, которая удаляется при закрытии соединения.
+ */
+public class TcpControl {
+    /**
+     * Максимальный размер кадра запроса.
+     */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Соединение с клиентом. Запись выполняется из любого потока: данные отправляются сразу,
+     * а то, что не поместилось в буфер сокета, дописывает поток селектора.
+     */
+    public class Connection {
+        private final SocketChannel channel;
+        private final Session session;
+        private final Worker worker;
+        private SelectionKey key;
+        private ByteBuffer input = ByteBuffer.allocate(8192);
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private long pendingBytes;
+        private boolean closed;
+
+        Connection(SocketChannel channel, Session session, Worker worker) {
+            this.channel = channel;
+            this.session = session;
+            this.worker = worker;
+        }
+
+        /**
+         * Отправляет сообщение одним кадром.
+         *
+         * @param data   Массив с сообщением.
+         * @param length Длина сообщения.
+         */
+        public void send(byte[] data, int length) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(4 + length);
+            frame.putInt(length);
+            frame.put(data, 0, length);
+            frame.flip();
+            synchronized (this) {
+                if (closed) return;
+                if (output.isEmpty()) {
+                    channel.write(frame);
+                    if (!frame.hasRemaining()) return;
+                }
+                if (pendingBytes + frame.remaining() > maxPendingBytes) {
+                    printer.printWarning("Клиент " + session.getId() + " не успевает принимать данные, соединение закрыто.");
+                    close();
+                    return;
+                }
+                output.add(frame);
+                pendingBytes += frame.remaining();
+            }
+            worker.requestWrite(this);
+        }
+
+        private synchronized boolean flush() throws IOException {
+            while (!output.isEmpty()) {
+                ByteBuffer frame = output.peek();
+                int written = channel.write(frame);
+                pendingBytes -= written;
+                if (frame.hasRemaining()) return false;
+                output.poll();
+            }
+            return true;
+        }
+
+        private synchronized void close() {
+            if (closed) return;
+            closed = true;
+            output.clear();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                printer.printError("Ошибка при закрытии соединения: " + e.getMessage());
+            }
+            if (session.getConnection() == this) session.setConnection(null);
+            sessions.remove(session);
+            connectionCount.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * Поток с собственным {@link Selector}, обслуживающий часть соединений.
+     */
+    private class Worker implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> registrations = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> writes = new ConcurrentLinkedQueue<>();
+
+        Worker() throws IOException {
+            selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            registrations.add(channel);
+            selector.wakeup();
+        }
+
+        void requestWrite(Connection connection) {
+            writes.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (selector.isOpen()) {
+                try {
+                    selector.select();
+                    processRegistrations();
+                    processWrites();
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept();
+                        else {
+                            Connection connection = (Connection) key.attachment();
+                            try {
+                                if (key.isReadable()) read(connection);
+                                if (key.isValid() && key.isWritable() && connection.flush()) key.interestOps(SelectionKey.OP_READ);
+                            } catch (IOException e) {
+                                connection.close();
+                            }
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                } catch (ClosedSelectorException e) {
+                    return;
+                } catch (IOException e) {
+                    printer.printError("Ошибка при обработке соединений: " + e.getMessage());
+                }
+            }
+        }
+
+        private void processRegistrations() {
+            SocketChannel channel;
+            while ((channel = registrations.poll()) != null) {
+                try {
+                    InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+                    channel.configureBlocking(false);
+                    channel.socket().setTcpNoDelay(true);
+                    Session session = sessions.open(address);
+                    Connection connection = new Connection(channel, session, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    session.setConnection(connection);
+                    connectionCount.incrementAndGet();
+                } catch (IOException e) {
+                    printer.printError("Ошибка при регистрации соединения: " + e.getMessage());
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        }
+
+        private void processWrites() {
+            Connection connection;
+            while ((connection = writes.poll()) != null) {
+                SelectionKey key = connection.key;
+                if (key != null && key.isValid()) key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Читает доступные данные и передаёт обработчику все полностью принятые кадры.
+         */
+        private void read(Connection connection) throws IOException {
+            int read = connection.channel.read(connection.input);
+            if (read < 0) {
+                connection.close();
+                return;
+            }
+            connection.session.touch();
+            ByteBuffer input = connection.input;
+            input.flip();
+            while (input.remaining() >= 4) {
+                int length = input.getInt(input.position());
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    printer.printWarning("Клиент " + connection.session.getId() + " прислал кадр недопустимого размера: " + length);
+                    connection.close();
+                    return;
+                }
+                if (input.remaining() < 4 + length) {
+                    if (input.capacity() < 4 + length) {
+                        ByteBuffer larger = ByteBuffer.allocate(4 + length);
+                        larger.put(input);
+                        connection.input = larger;
+                        return;
+                    }
+                    break;
+                }
+                input.position(input.position() + 4);
+                ByteBuffer frame = input.slice(input.position(), length);
+                input.position(input.position() + length);
+                frames.incrementAndGet();
+                handler.accept(connection.session, frame);
+            }
+            input.compact();
+            // Буфер, увеличенный под большой кадр, не храним дольше, чем нужно
+            if (input.capacity() > 8192 && input.position() <= 8192) {
+                input.flip();
+                connection.input = ByteBuffer.allocate(8192).put(input);
+            }
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = server.accept()) != null) {
+                workers.get(Math.floorMod(nextWorker.getAndIncrement(), workers.size())).register(channel);
+            }
+        }
+    }
+
+
+    private final ServerSocketChannel server;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final SessionControl sessions;
+    private final BiConsumer<Session, ByteBuffer> handler;
+    private final long maxPendingBytes;
+    private final Printer printer;
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong frames = new AtomicLong();
+
+    /**
+     * Открывает TCP-порт.
+     *
+     * @param port            Порт, на котором принимаются соединения.
+     * @param workerCount     Число потоков с селекторами.
+     * @param maxPendingBytes Объём неотправленных данных, после которого соединение закрывается.
+     * @param sessions        Реестр сессий.
+     * @param handler         Обработчик принятых кадров. Вызывается в потоке селектора;
+     *                        буфер кадра действителен только во время вызова.
+     */
+    public TcpControl(int port, int workerCount, long maxPendingBytes, SessionControl sessions, BiConsumer<Session, ByteBuffer> handler, Printer printer) throws IOException {
+        this.sessions = sessions;
+        this.handler = handler;
+        this.maxPendingBytes = maxPendingBytes;
+        this.printer = printer;
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        server.configureBlocking(false);
+        for (int i = 0; i < Math.max(1, workerCount); i++) workers.add(new Worker());
+        server.register(workers.get(0).selector, SelectionKey.OP_ACCEPT);
+        StatsControl.register("tcp.connections", connectionCount::get);
+        StatsControl.register("tcp.frames", frames::get);
+    }
+
+    /**
+     * Запускает потоки селекторов.
+     */
+    public void start() {
+        for (int i = 0; i < workers.size(); i++) {
+            new Thread(workers.get(i), "tcp-selector-" + i).start();
+        }
+    }
+
+    /**
+     * Закрывает порт и все соединения.
+     */
+    public void close() {
+        try {
+            server.close();
+        } catch (IOException e) {
+            printer.printError("Ошибка при закрытии TCP-порта: " + e.getMessage());
+        }
+        for (Worker worker : workers) {
+            for (SelectionKey key : worker.selector.keys()) {
+                if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+            }
+            try {
+                worker.selector.close();
+            } catch (IOException e) {
+                printer.printError("Ошибка при закрытии селектора: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -3,11 +3,14 @@ package controls.flat_builder;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 
+import connections.IWireExternalizable;
 import connections.PrintType;
 import connections.Response;
 import connections.ResponseType;
+import connections.WireCodec;
 import controls.CollectionControl;
 import models.Flat;
 import models.Transport;
@@ -19,7 +22,7 @@ import util.ArgumentTypeConverter;
  * validation and constraints on their properties. It includes methods to set individual 
  * fields, ensuring data integrity and meeting specified requirements.
  */
-public abstract class BuilderBase implements IBuilder{
+public abstract class BuilderBase implements IBuilder, IWireExternalizable{
 
     private static final long serialVersionUID = 1L;
     /**
@@ -526,4 +529,41 @@ public abstract class BuilderBase implements IBuilder{
         house_numberOfFloors = in.readLong();
         house_numberOfFlatsOnFloor = in.readLong();
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putBoolean(out, id != null);
+        if (id != null) WireCodec.putVarLong(out, id);
+        WireCodec.putString(out, name);
+        out.putFloat(coordinates_x);
+        out.putDouble(coordinates_y);
+        WireCodec.putDate(out, creationDate);
+        out.putFloat(area);
+        WireCodec.putVarLong(out, numberOfRooms);
+        out.putFloat(timeToMetroByTransport);
+        WireCodec.putEnum(out, view);
+        WireCodec.putEnum(out, transport);
+        WireCodec.putString(out, house_name);
+        WireCodec.putVarInt(out, house_year);
+        WireCodec.putVarLong(out, house_numberOfFloors);
+        WireCodec.putVarLong(out, house_numberOfFlatsOnFloor);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        id = WireCodec.getBoolean(in) ? WireCodec.getVarLong(in) : null;
+        name = WireCodec.getString(in);
+        coordinates_x = in.getFloat();
+        coordinates_y = in.getDouble();
+        creationDate = WireCodec.getDate(in);
+        area = in.getFloat();
+        numberOfRooms = WireCodec.getVarLong(in);
+        timeToMetroByTransport = in.getFloat();
+        view = WireCodec.getEnum(in, View.values());
+        transport = WireCodec.getEnum(in, Transport.values());
+        house_name = WireCodec.getString(in);
+        house_year = WireCodec.getVarInt(in);
+        house_numberOfFloors = WireCodec.getVarLong(in);
+        house_numberOfFlatsOnFloor = WireCodec.getVarLong(in);
+    }
 }
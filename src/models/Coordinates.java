@@ -4,13 +4,16 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
+import connections.IWireExternalizable;
+
 /**
  * The Coordinates class represents a set of two-dimensional coordinates (x and y).
  * It includes validation constraints for each field to ensure valid values.
  */
-public class Coordinates implements Externalizable {
+public class Coordinates implements Externalizable, IWireExternalizable {
 
     /**
      * The x-coordinate. Must be greater than -817 and cannot be null.
@@ -95,4 +98,16 @@ public class Coordinates implements Externalizable {
         x = in.readFloat();
         y = in.readDouble();
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        out.putFloat(x);
+        out.putDouble(y);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        x = in.getFloat();
+        y = in.getDouble();
+    }
 }
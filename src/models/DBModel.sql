@@ -2,6 +2,8 @@ DROP TABLE IF EXISTS Flats CASCADE;
 DROP TABLE IF EXISTS Houses CASCADE;
 DROP TABLE IF EXISTS Coordinates CASCADE;
 DROP TABLE IF EXISTS Users CASCADE;
+DROP TABLE IF EXISTS schema_version;
+DROP TABLE IF EXISTS journal_checkpoint;
 
 DROP TYPE IF EXISTS Transport CASCADE;
 DROP TYPE IF EXISTS View CASCADE;
@@ -54,3 +56,7 @@ CREATE TABLE Flats (
   house_id INTEGER NOT NULL REFERENCES Houses(id),
   created_by_user INTEGER REFERENCES Users(id)
 );
+
+CREATE INDEX flats_created_by_user_idx ON Flats (created_by_user);
+CREATE INDEX flats_coordinates_id_idx ON Flats (coordinates_id);
+CREATE INDEX flats_house_id_idx ON Flats (house_id);
@@ -4,8 +4,12 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
 /**
  * The Flat class represents a real estate object with various attributes such as its
  * identification number, name, coordinates, creation date, area, number of rooms, proximity to metro,
@@ -13,7 +17,7 @@ import java.time.LocalDate;
  * <p>
  * It also implements the {@link Comparable} interface to allow comparison based on the area of the flat.
  */
-public class Flat implements Comparable<Flat>, Externalizable{
+public class Flat implements Comparable<Flat>, Externalizable, IWireExternalizable{
     private static final long serialVersionUID = 1L;
 
     /**
@@ -339,4 +343,34 @@ public class Flat implements Comparable<Flat>, Externalizable{
         transport = Transport.valueOf((String) in.readObject());
         house = (House) in.readObject();
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putVarLong(out, id);
+        WireCodec.putString(out, name);
+        coordinates.writeWire(out);
+        WireCodec.putDate(out, creationDate);
+        out.putFloat(area);
+        WireCodec.putVarLong(out, numberOfRooms);
+        out.putFloat(timeToMetroByTransport);
+        WireCodec.putEnum(out, view);
+        WireCodec.putEnum(out, transport);
+        house.writeWire(out);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        id = WireCodec.getVarLong(in);
+        name = WireCodec.getString(in);
+        coordinates = new Coordinates();
+        coordinates.readWire(in);
+        creationDate = WireCodec.getDate(in);
+        area = in.getFloat();
+        numberOfRooms = WireCodec.getVarLong(in);
+        timeToMetroByTransport = in.getFloat();
+        view = WireCodec.getEnum(in, View.values());
+        transport = WireCodec.getEnum(in, Transport.values());
+        house = new House();
+        house.readWire(in);
+    }
 }
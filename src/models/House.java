@@ -4,14 +4,18 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
 /**
  * The House class represents a building's attributes, including its name,
  * year of construction, number of floors, and number of flats per floor.
  * It validates each field to ensure proper values are assigned.
  */
-public class House implements Externalizable {
+public class House implements Externalizable, IWireExternalizable {
     /**
      * The name of the house. Must not be null.
      */
@@ -131,4 +135,20 @@ public class House implements Externalizable {
         numberOfFloors = in.readLong();
         numberOfFlatsOnFloor = in.readLong();
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putString(out, name);
+        WireCodec.putVarInt(out, year);
+        WireCodec.putVarLong(out, numberOfFloors);
+        WireCodec.putVarLong(out, numberOfFlatsOnFloor);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        name = WireCodec.getString(in);
+        year = WireCodec.getVarInt(in);
+        numberOfFloors = WireCodec.getVarLong(in);
+        numberOfFlatsOnFloor = WireCodec.getVarLong(in);
+    }
 }
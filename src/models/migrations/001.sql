@@ -0,0 +1,57 @@
+-- Исходная схема. Объекты создаются, только если их ещё нет, поэтому миграция
+-- применяется и к пустой базе, и к базе, созданной скриптом DBModel.sql.
+
+DO $$ BEGIN
+  CREATE TYPE View AS ENUM (
+    'STREET',
+    'PARK',
+    'BAD',
+    'NORMAL',
+    'GOOD'
+  );
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+DO $$ BEGIN
+  CREATE TYPE Transport AS ENUM (
+    'FEW',
+    'LITTLE',
+    'NORMAL',
+    'ENOUGH'
+  );
+EXCEPTION WHEN duplicate_object THEN NULL;
+END $$;
+
+CREATE TABLE IF NOT EXISTS Users (
+  id SERIAL PRIMARY KEY,
+  user_name TEXT UNIQUE NOT NULL,
+  password_hash TEXT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS Coordinates (
+  id SERIAL PRIMARY KEY,
+  x REAL NOT NULL CHECK (x > -817),
+  y DOUBLE PRECISION NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS Houses (
+  id SERIAL PRIMARY KEY,
+  name TEXT NOT NULL,
+  year INTEGER NOT NULL CHECK (year > 0),
+  number_of_floors BIGINT NOT NULL CHECK (number_of_floors > 0 AND number_of_floors <= 65),
+  number_of_flats_on_floor BIGINT NOT NULL CHECK (number_of_flats_on_floor > 0)
+);
+
+CREATE TABLE IF NOT EXISTS Flats (
+  id SERIAL PRIMARY KEY,
+  name TEXT NOT NULL CHECK (char_length(name) > 0),
+  coordinates_id INTEGER NOT NULL REFERENCES Coordinates(id),
+  creation_date DATE NOT NULL,
+  area REAL NOT NULL CHECK (area > 0),
+  number_of_rooms BIGINT NOT NULL CHECK (number_of_rooms > 0),
+  time_to_metro_by_transport REAL NOT NULL CHECK (time_to_metro_by_transport > 0),
+  view View NOT NULL,
+  transport Transport NOT NULL,
+  house_id INTEGER NOT NULL REFERENCES Houses(id),
+  created_by_user INTEGER REFERENCES Users(id)
+);
@@ -0,0 +1,6 @@
+-- Индексы для частых запросов: проверки владельца при удалении и изменении квартир
+-- и соединения Flats с Coordinates и Houses при загрузке коллекции.
+
+CREATE INDEX IF NOT EXISTS flats_created_by_user_idx ON Flats (created_by_user);
+CREATE INDEX IF NOT EXISTS flats_coordinates_id_idx ON Flats (coordinates_id);
+CREATE INDEX IF NOT EXISTS flats_house_id_idx ON Flats (house_id);
@@ -0,0 +1,10 @@
+-- Номер последней записи журнала отложенной записи, применённой к базе.
+-- Обновляется в той же транзакции, что и сами изменения, поэтому после перезапуска
+-- повторно применяются только записи журнала с большими номерами.
+
+CREATE TABLE IF NOT EXISTS journal_checkpoint (
+  id INTEGER PRIMARY KEY CHECK (id = 1),
+  applied_sequence BIGINT NOT NULL
+);
+
+INSERT INTO journal_checkpoint (id, applied_sequence) VALUES (1, 0) ON CONFLICT (id) DO NOTHING;
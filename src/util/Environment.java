@@ -0,0 +1,72 @@
+package util;
+
+import consoles.Printer;
+
+/**
+ * The Environment class reads server settings from environment variables,
+ * falling back to default values when a variable is absent or malformed.
+ */
+public class Environment {
+    private static final Printer printer = new Printer();
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param name         The name of the environment variable.
+     * @param defaultValue The value used if the variable is absent or not an integer.
+     * @return The parsed value, or the default value.
+     */
+    public static int getInt(String name, int defaultValue) {
+        try {
+            Integer value = ArgumentTypeConverter.getInteger(System.getenv(name));
+            return value == null ? defaultValue : value;
+        }
+        catch (NumberFormatException e) {
+            printer.printWarning("Переменная окружения " + name + " должна быть целым числом, используется значение " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a long integer setting.
+     *
+     * @param name         The name of the environment variable.
+     * @param defaultValue The value used if the variable is absent or not an integer.
+     * @return The parsed value, or the default value.
+     */
+    public static long getLong(String name, long defaultValue) {
+        try {
+            Long value = ArgumentTypeConverter.getLong(System.getenv(name));
+            return value == null ? defaultValue : value;
+        }
+        catch (NumberFormatException e) {
+            printer.printWarning("Переменная окружения " + name + " должна быть целым числом, используется значение " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a boolean setting. The values "true", "1" and "yes" are treated as true.
+     *
+     * @param name         The name of the environment variable.
+     * @param defaultValue The value used if the variable is absent.
+     * @return The parsed value, or the default value.
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = ArgumentTypeConverter.getString(System.getenv(name));
+        if (value == null) return defaultValue;
+        return value.equalsIgnoreCase("true") || value.equals("1") || value.equalsIgnoreCase("yes");
+    }
+
+    /**
+     * Reads a string setting.
+     *
+     * @param name         The name of the environment variable.
+     * @param defaultValue The value used if the variable is absent or empty.
+     * @return The value of the variable, or the default value.
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = ArgumentTypeConverter.getString(System.getenv(name));
+        return value == null ? defaultValue : value;
+    }
+}
@@ -0,0 +1,94 @@
+package util;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import connections.IWireExternalizable;
+import connections.WireCodec;
+import models.Flat;
+
+public class FlatPageWrapper implements Externalizable, IWireExternalizable {
+    private static final long serialVersionUID = 1L;
+
+    private ArrayList<Flat> flats; // Объявлен как ArrayList: поле сериализуемого класса должно иметь сериализуемый тип
+    private String nextCursor;
+    private int total;
+
+    public FlatPageWrapper() {}
+
+    public FlatPageWrapper(List<Flat> flats, String nextCursor, int total) {
+        this.flats = new ArrayList<>(flats);
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public List<Flat> getFlats() {
+        return flats;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(flats.size());
+        for (Flat flat : flats) out.writeObject(flat);
+        out.writeObject(nextCursor == null ? "" : nextCursor);
+        out.writeInt(total);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        int size = in.readInt();
+        flats = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) flats.add((Flat) in.readObject());
+        nextCursor = (String) in.readObject();
+        if (nextCursor.isEmpty()) nextCursor = null;
+        total = in.readInt();
+    }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putVarInt(out, flats.size());
+        for (Flat flat : flats) flat.writeWire(out);
+        WireCodec.putString(out, nextCursor);
+        WireCodec.putVarInt(out, total);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        int size = WireCodec.getVarInt(in);
+        if (size < 0 || size > in.remaining()) throw new IllegalArgumentException("Неверный размер страницы: " + size);
+        flats = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Flat flat = new Flat();
+            flat.readWire(in);
+            flats.add(flat);
+        }
+        nextCursor = WireCodec.getString(in);
+        total = WireCodec.getVarInt(in);
+    }
+
+    @Override
+    public String toString() {
+        if (flats.isEmpty()) return "\nСтраница пуста!";
+
+        StringBuilder result = new StringBuilder();
+        for (Flat flat : flats) {
+            result.append("\n").append(flat).append("\n");
+        }
+        result.append("\nПоказано ").append(flats.size()).append(" из ").append(total);
+        if (nextCursor != null) result.append(",\nКурсор следующей страницы: ").append(nextCursor);
+        return result.toString();
+    }
+}
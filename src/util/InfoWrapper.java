@@ -4,9 +4,13 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 
-public class InfoWrapper implements Externalizable {
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
+public class InfoWrapper implements Externalizable, IWireExternalizable {
     private String type;
     private int elementCount;
     private LocalDateTime initTime;
@@ -53,6 +57,22 @@ public class InfoWrapper implements Externalizable {
         lastSaveTime = LocalDateTime.parse((String) in.readObject());
     }
 
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putString(out, type);
+        WireCodec.putVarInt(out, elementCount);
+        WireCodec.putDateTime(out, initTime);
+        WireCodec.putDateTime(out, lastSaveTime);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        type = WireCodec.getString(in);
+        elementCount = WireCodec.getVarInt(in);
+        initTime = WireCodec.getDateTime(in);
+        lastSaveTime = WireCodec.getDateTime(in);
+    }
+
     @Override
     public String toString() {
         return "Тип: " + type + ",\nКоличество элементов: " + elementCount + ",\nДата инициализации: " + initTime
@@ -4,13 +4,17 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
-public class LongWrapper implements Externalizable {
-    private Long value;
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
+public class LongWrapper implements Externalizable, IWireExternalizable {
+    private long value; // Примитивный тип: у обёртки всегда есть значение, и кодекам не нужно кодировать null
 
     public LongWrapper() {}
 
-    public LongWrapper(Long value) {
+    public LongWrapper(long value) {
         this.value = value;
     }
 
@@ -27,4 +31,14 @@ public class LongWrapper implements Externalizable {
     public Long getValue() {
         return value;
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putVarLong(out, value);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        value = WireCodec.getVarLong(in);
+    }
 }
@@ -0,0 +1,76 @@
+package util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The ObjectPool class keeps a bounded number of reusable objects.
+ * When the pool is empty a new object is created, and objects returned
+ * to a full pool are dropped.
+ *
+ * @param <T> The type of pooled objects.
+ */
+public class ObjectPool<T> {
+    private final BlockingQueue<T> items;
+    private final Supplier<T> factory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new pool.
+     *
+     * @param capacity The maximum number of idle objects kept in the pool.
+     * @param factory  The supplier used to create objects when the pool is empty.
+     */
+    public ObjectPool(int capacity, Supplier<T> factory) {
+        this.items = new ArrayBlockingQueue<>(capacity);
+        this.factory = factory;
+    }
+
+    /**
+     * Takes an object from the pool, or creates a new one if the pool is empty.
+     *
+     * @return A pooled or newly created object.
+     */
+    public T borrow() {
+        T item = items.poll();
+        if (item == null) {
+            misses.incrementAndGet();
+            return factory.get();
+        }
+        hits.incrementAndGet();
+        return item;
+    }
+
+    /**
+     * Returns an object to the pool. The object is dropped if the pool is full.
+     *
+     * @param item The object to return.
+     */
+    public void release(T item) {
+        if (item != null) items.offer(item);
+    }
+
+    /**
+     * @return The number of borrows served from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of borrows that had to create a new object.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of idle objects in the pool.
+     */
+    public int getIdle() {
+        return items.size();
+    }
+}
@@ -4,8 +4,12 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
-public class StringWrapper implements Externalizable {
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
+public class StringWrapper implements Externalizable, IWireExternalizable {
     private String value;
 
     public StringWrapper() {}
@@ -27,4 +31,14 @@ public class StringWrapper implements Externalizable {
     public String getValue() {
         return value;
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putString(out, value);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        value = WireCodec.getString(in);
+    }
 }
@@ -0,0 +1,116 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import consoles.Printer;
+
+/**
+ * The TimerWheel class is a hashed timer wheel for a large number of short timeouts.
+ * Scheduling and cancelling are O(1); a single daemon thread advances the wheel
+ * once per tick and runs the expired tasks.
+ */
+public class TimerWheel {
+
+    /**
+     * A scheduled task that can be cancelled before it runs.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long rounds) {
+            this.task = task;
+            this.rounds = rounds;
+        }
+
+        /**
+         * Cancels the task. A cancelled task is skipped when its slot expires.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final List<Queue<Timeout>> slots;
+    private final long tickMillis;
+    private volatile long tick;
+    private final Thread worker;
+    private final Printer printer;
+
+    /**
+     * Constructs and starts a new timer wheel.
+     *
+     * @param name       The name of the worker thread.
+     * @param tickMillis The duration of one tick, which is the timer resolution.
+     * @param slotCount  The number of slots in the wheel.
+     * @param printer    The printer used to report tasks that fail.
+     */
+    public TimerWheel(String name, long tickMillis, int slotCount, Printer printer) {
+        this.tickMillis = tickMillis;
+        this.printer = printer;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) slots.add(new ConcurrentLinkedQueue<>());
+        worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task to run after the given delay, rounded up to whole ticks.
+     *
+     * @param delayMillis The delay in milliseconds.
+     * @param task        The task to run.
+     * @return A {@link Timeout} handle that can be used to cancel the task.
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        Timeout timeout = new Timeout(task, (ticks - 1) / slots.size());
+        slots.get((int) ((tick + ticks) % slots.size())).add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the worker thread. Pending tasks are not run.
+     */
+    public void stop() {
+        worker.interrupt();
+    }
+
+    private void run() {
+        long next = System.currentTimeMillis() + tickMillis;
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleep = next - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            next += tickMillis;
+            tick++;
+
+            Queue<Timeout> slot = slots.get((int) (tick % slots.size()));
+            int size = slot.size();
+            for (int i = 0; i < size; i++) {
+                Timeout timeout = slot.poll();
+                if (timeout == null) break;
+                if (timeout.cancelled) continue;
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                    slot.add(timeout);
+                    continue;
+                }
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    printer.printError("Ошибка в задаче таймера: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
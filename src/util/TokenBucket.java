@@ -0,0 +1,52 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TokenBucket class limits the rate of events without locks.
+ * <p>
+ * The bucket holds up to {@code burst} tokens and is refilled at {@code ratePerSecond} tokens
+ * per second. Instead of a token count it keeps a single timestamp, the moment at which the
+ * bucket would be full again, so that taking a token is one compare-and-set.
+ */
+public class TokenBucket {
+    private final long interval; // Время пополнения одного токена в наносекундах
+    private final long capacity; // Время пополнения пустого ведра в наносекундах
+    private final AtomicLong fullAt;
+
+    /**
+     * Constructs a new full bucket.
+     *
+     * @param ratePerSecond The number of tokens added per second.
+     * @param burst         The maximum number of tokens in the bucket.
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.interval = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.capacity = interval * Math.max(1, burst);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes one token if there is one.
+     *
+     * @return true if a token was taken, false if the bucket is empty.
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+            if (next - now > capacity) return false;
+            if (fullAt.compareAndSet(current, next)) return true;
+        }
+    }
+
+    /**
+     * Checks whether the bucket has been refilled completely, that is, the limit has not been used recently.
+     *
+     * @return true if the bucket is full.
+     */
+    public boolean isFull() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,73 @@
+package util;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
+public class TokenWrapper implements Externalizable, IWireExternalizable {
+    private String token;
+    private long expiresAt;
+    private String message;
+
+    public TokenWrapper() {}
+
+    public TokenWrapper(String token) {
+        this(token, 0, null);
+    }
+
+    public TokenWrapper(String token, long expiresAt, String message) {
+        this.token = token;
+        this.expiresAt = expiresAt;
+        this.message = message;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeObject(token);
+        out.writeLong(expiresAt);
+        out.writeObject(message == null ? "" : message);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        token = (String) in.readObject();
+        expiresAt = in.readLong();
+        message = (String) in.readObject();
+    }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putString(out, token);
+        WireCodec.putVarLong(out, expiresAt);
+        WireCodec.putString(out, message);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        token = WireCodec.getString(in);
+        expiresAt = WireCodec.getVarLong(in);
+        message = WireCodec.getString(in);
+    }
+
+    @Override
+    public String toString() {
+        return message == null ? "" : message;
+    }
+}
@@ -4,8 +4,12 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
 
-public class UserWrapper implements Externalizable {
+import connections.IWireExternalizable;
+import connections.WireCodec;
+
+public class UserWrapper implements Externalizable, IWireExternalizable {
     private String name;
     private String password;
 
@@ -35,4 +39,16 @@ public class UserWrapper implements Externalizable {
     public String getPassword() {
         return password;
     }
+
+    @Override
+    public void writeWire(ByteBuffer out) {
+        WireCodec.putString(out, name);
+        WireCodec.putString(out, password);
+    }
+
+    @Override
+    public void readWire(ByteBuffer in) {
+        name = WireCodec.getString(in);
+        password = WireCodec.getString(in);
+    }
 }